@@ -0,0 +1,92 @@
+package com.manugoswami.monk.bench;
+
+import com.manugoswami.monk.MonkApplication;
+import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.repository.CouponRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the active catalog through the full JPA stack: findAll() filtered in Java (the old
+ * startup path) against the indexed findActive(now) query. The catalog is 40% active (half
+ * of those without expiry), 30% disabled and 30% expired.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ActiveCouponQueryBenchmark {
+
+    @Param({"10000", "100000"})
+    int catalogSize;
+
+    private ConfigurableApplicationContext context;
+    private CouponRepository repository;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(MonkApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:activebench;DB_CLOSE_DELAY=-1",
+                        "spring.jpa.show-sql=false",
+                        "spring.jpa.properties.hibernate.format_sql=false",
+                        "logging.level.root=WARN")
+                .run();
+        repository = context.getBean(CouponRepository.class);
+
+        Instant now = Instant.now();
+        SplittableRandom rnd = new SplittableRandom(42);
+        List<Coupon> batch = new ArrayList<>();
+        for (Coupon c : Fixtures.catalog(catalogSize, 1000, 42)) {
+            c.setId(null);
+            int bucket = rnd.nextInt(10);
+            if (bucket < 3) {
+                c.setEnabled(false);
+            } else if (bucket < 6) {
+                c.setExpiresAt(now.minus(1 + rnd.nextInt(30), ChronoUnit.DAYS));
+            } else if (bucket < 8) {
+                c.setExpiresAt(now.plus(1 + rnd.nextInt(30), ChronoUnit.DAYS));
+            }
+            batch.add(c);
+            if (batch.size() == 1000) {
+                repository.saveAll(batch);
+                batch.clear();
+            }
+        }
+        repository.saveAll(batch);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Coupon> findAllThenFilter() {
+        Instant now = Instant.now();
+        List<Coupon> active = new ArrayList<>();
+        for (Coupon c : repository.findAll()) {
+            if (Boolean.TRUE.equals(c.getEnabled()) && (c.getExpiresAt() == null || c.getExpiresAt().isAfter(now))) {
+                active.add(c);
+            }
+        }
+        return active;
+    }
+
+    @Benchmark
+    public List<Coupon> findActive() {
+        return repository.findActive(Instant.now());
+    }
+}
@@ -0,0 +1,82 @@
+package com.manugoswami.monk.bench;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.manugoswami.monk.dto.ApplicableCouponDto;
+import com.manugoswami.monk.dto.CartDto;
+import com.manugoswami.monk.dto.UpdatedCartDto;
+import com.manugoswami.monk.processor.CartContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the cart endpoints' bodies per wire format: reading a cart through CartDto (the old
+ * path) and straight into CartContext, and writing the applicable-coupons and apply-coupon
+ * responses. Encoded sizes are printed once per trial.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CartCodecBenchmark {
+
+    @Param({"JSON", "SMILE", "CBOR"})
+    String format;
+
+    @Param({"10", "100", "500"})
+    int cartItems;
+
+    private ObjectMapper mapper;
+    private byte[] cart;
+    private List<ApplicableCouponDto> applicable;
+    private UpdatedCartDto applied;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mapper = switch (format) {
+            case "SMILE" -> new ObjectMapper(new SmileFactory());
+            case "CBOR" -> new ObjectMapper(new CBORFactory());
+            default -> new ObjectMapper();
+        };
+        // as configured by Spring Boot
+        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+        CartDto dto = Fixtures.cart(cartItems, 0.5, 1000, 7);
+        cart = mapper.writeValueAsBytes(dto);
+
+        Engine engine = new Engine(Fixtures.catalog(10_000, 1000, 42), 0);
+        applicable = engine.service.findApplicableCoupons(dto);
+        applied = applicable.isEmpty() ? null : engine.service.applyCoupon(applicable.get(0).getCouponId(), dto);
+
+        System.out.printf("%n%s, %d items: cart %d bytes, applicable-coupons %d bytes (%d coupons), apply-coupon %d bytes%n",
+                format, cartItems, cart.length, mapper.writeValueAsBytes(applicable).length, applicable.size(),
+                mapper.writeValueAsBytes(applied).length);
+    }
+
+    @Benchmark
+    public CartContext readViaDto() throws IOException {
+        return CartContext.of(mapper.readValue(cart, CartDto.class));
+    }
+
+    @Benchmark
+    public CartContext readStreaming() throws IOException {
+        return mapper.readValue(cart, CartContext.class);
+    }
+
+    @Benchmark
+    public byte[] writeApplicable() throws IOException {
+        return mapper.writeValueAsBytes(applicable);
+    }
+
+    @Benchmark
+    public byte[] writeApplied() throws IOException {
+        return mapper.writeValueAsBytes(applied);
+    }
+}
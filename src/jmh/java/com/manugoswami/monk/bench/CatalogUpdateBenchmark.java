@@ -0,0 +1,65 @@
+package com.manugoswami.monk.bench;
+
+import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.rule.CouponRule;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of publishing a catalog change. updateOne re-saves a single coupon, which copies the
+ * snapshot's flat arrays and rebuilds only the postings it appears in; updateTenth saves a
+ * tenth of the catalog in one putAll, which rebuilds the snapshot from scratch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CatalogUpdateBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int catalogSize;
+
+    private Engine engine;
+    private Coupon single;
+    private CouponRule singleRule;
+    private List<Coupon> batch;
+    private List<CouponRule> batchRules;
+    private long version;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<Coupon> catalog = Fixtures.catalog(catalogSize, 1000, 42);
+        engine = new Engine(catalog, 0);
+        single = catalog.get(catalogSize / 2);
+        singleRule = engine.compiler.compileRule(single);
+        batch = new ArrayList<>();
+        batchRules = new ArrayList<>();
+        for (int i = 0; i < catalogSize; i += 10) {
+            batch.add(catalog.get(i));
+            batchRules.add(engine.compiler.compileRule(catalog.get(i)));
+        }
+    }
+
+    @Benchmark
+    public long updateOne() {
+        // a newer version each time, or the index ignores the write
+        single.setVersion(++version);
+        engine.index.put(single, singleRule);
+        return engine.index.version();
+    }
+
+    @Benchmark
+    public long updateTenth() {
+        long v = ++version;
+        for (Coupon c : batch) {
+            c.setVersion(v);
+        }
+        engine.index.putAll(batch, batchRules);
+        return engine.index.version();
+    }
+}
@@ -0,0 +1,75 @@
+package com.manugoswami.monk.bench;
+
+import com.manugoswami.monk.index.CompiledCoupon;
+import com.manugoswami.monk.index.SnapshotFile;
+import com.manugoswami.monk.model.Coupon;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the compiled catalog on a cold node: compiling every coupon's payloadJson, as the
+ * database load does once rows are fetched, against reading the same catalog from a snapshot
+ * file. The database round trip and the row mapping are not included.
+ *
+ * Reading a snapshot still decodes every record onto the heap, and RULE payloads are stored as
+ * JSON and compiled again, so both paths allocate in proportion to the catalog; rulePercent
+ * sets the share of coupons written as RULE payloads to show that cost. Compare allocation
+ * (gc.alloc.rate.norm) as well as time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CatalogWarmupBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int catalogSize;
+
+    @Param({"0", "30"})
+    int rulePercent;
+
+    private Engine engine;
+    private List<Coupon> catalog;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        catalog = new ArrayList<>();
+        for (Coupon c : Fixtures.catalog(catalogSize, 1000, 42)) {
+            boolean convertible = c.getType().equals("CART_WISE") || c.getType().equals("PRODUCT_WISE");
+            catalog.add(convertible && c.getId() % 100 < rulePercent ? Fixtures.asRule(c) : c);
+        }
+        engine = new Engine(catalog, 0);
+        file = Files.createTempFile("monk-catalog", ".snap");
+        SnapshotFile.write(file, 1, engine.index.snapshot().getCoupons(), Map.of());
+        System.out.println("snapshot bytes: " + Files.size(file));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public List<CompiledCoupon> compilePayloads() {
+        List<CompiledCoupon> compiled = new ArrayList<>(catalog.size());
+        for (Coupon c : catalog) {
+            compiled.add(engine.compiler.compile(c));
+        }
+        return compiled;
+    }
+
+    @Benchmark
+    public SnapshotFile.Contents readSnapshot() throws IOException {
+        return SnapshotFile.read(file, engine.compiler);
+    }
+}
@@ -0,0 +1,63 @@
+package com.manugoswami.monk.bench;
+
+import com.manugoswami.monk.dto.ApplicableCouponDto;
+import com.manugoswami.monk.dto.CartDto;
+import com.manugoswami.monk.dto.UpdatedCartDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end engine cost: cart parsing, candidate pruning, processor evaluation and DTO
+ * conversion. Run with {@code -prof gc} (the jmh profile does) for allocation rates.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CouponServiceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int catalogSize;
+
+    @Param({"1", "50", "500"})
+    int cartItems;
+
+    // share of cart products that some coupon references
+    @Param({"0.1", "0.5", "1.0"})
+    double overlap;
+
+    // 0 keeps evaluation sequential so the baseline is single-threaded
+    @Param({"0"})
+    long parallelThreshold;
+
+    private Engine engine;
+    private CartDto cart;
+    private Long applyCouponId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int productRange = Math.max(1000, catalogSize);
+        engine = new Engine(Fixtures.catalog(catalogSize, productRange, 42), parallelThreshold);
+        cart = Fixtures.cart(cartItems, overlap, productRange, 7);
+
+        List<ApplicableCouponDto> applicable = engine.service.findApplicableCoupons(cart);
+        applyCouponId = applicable.isEmpty() ? null : applicable.get(0).getCouponId();
+    }
+
+    @Benchmark
+    public List<ApplicableCouponDto> findApplicableCoupons() {
+        return engine.service.findApplicableCoupons(cart);
+    }
+
+    @Benchmark
+    public UpdatedCartDto applyCoupon() {
+        if (applyCouponId == null) {
+            return null;
+        }
+        return engine.service.applyCoupon(applyCouponId, cart);
+    }
+}
@@ -0,0 +1,61 @@
+package com.manugoswami.monk.bench;
+
+import com.manugoswami.monk.index.CouponCompiler;
+import com.manugoswami.monk.index.CouponIndex;
+import com.manugoswami.monk.metrics.CouponMetrics;
+import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.processor.CouponProcessor;
+import com.manugoswami.monk.processor.ProcessorRegistry;
+import com.manugoswami.monk.processor.impl.BxGyProcessor;
+import com.manugoswami.monk.processor.impl.CartWiseProcessor;
+import com.manugoswami.monk.processor.impl.ProductWiseProcessor;
+import com.manugoswami.monk.processor.impl.RuleProcessor;
+import com.manugoswami.monk.rule.CouponRule;
+import com.manugoswami.monk.service.ApplicableCouponCache;
+import com.manugoswami.monk.service.ApplicableCouponEvaluator;
+import com.manugoswami.monk.service.CouponService;
+import com.manugoswami.monk.service.StackingOptimizer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The evaluation engine wired by hand, without a Spring context or a database.
+ */
+final class Engine {
+
+    final List<CouponProcessor> processors =
+            List.of(new CartWiseProcessor(), new ProductWiseProcessor(), new BxGyProcessor(), new RuleProcessor());
+    final CouponCompiler compiler = new CouponCompiler(new ProcessorRegistry(processors));
+    // meters are recorded as in production, into a registry nobody scrapes
+    final CouponMetrics metrics = new CouponMetrics(new SimpleMeterRegistry());
+    // the repository is only read by CouponIndex.load(), which the benchmarks never call
+    final CouponIndex index = new CouponIndex(null, compiler, metrics, "");
+    final CouponService service;
+
+    Engine(List<Coupon> catalog, long parallelThreshold) {
+        List<CouponRule> rules = new ArrayList<>(catalog.size());
+        for (Coupon c : catalog) {
+            rules.add(compiler.compileRule(c));
+        }
+        index.putAll(catalog, rules);
+        service = new CouponService(null, compiler, index,
+                new StackingOptimizer(200_000),
+                new ApplicableCouponEvaluator(parallelThreshold, 0), metrics,
+                // caching off: the benchmarks measure evaluation, not cache hits
+                new ApplicableCouponCache(0, null),
+                event -> { },
+                // redemption and writes are not benchmarked
+                null, null, null);
+    }
+
+    CouponProcessor processor(String type) {
+        for (CouponProcessor p : processors) {
+            if (p.type().equals(type)) {
+                return p;
+            }
+        }
+        throw new IllegalArgumentException("Unknown type: " + type);
+    }
+}
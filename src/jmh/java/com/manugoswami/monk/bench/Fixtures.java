@@ -0,0 +1,116 @@
+package com.manugoswami.monk.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.manugoswami.monk.dto.CartDto;
+import com.manugoswami.monk.dto.CartItemDto;
+import com.manugoswami.monk.model.Coupon;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic catalogs and carts. Coupons reference product ids in
+ * [1, productRange]; carts draw a share of their products from that range ({@code overlap})
+ * and the rest from ids no coupon mentions.
+ */
+final class Fixtures {
+
+    private static final ObjectMapper OM = new ObjectMapper();
+
+    private Fixtures() {
+    }
+
+    static List<Coupon> catalog(int size, int productRange, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        List<Coupon> coupons = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int kind = rnd.nextInt(10);
+            Coupon c = new Coupon();
+            c.setId((long) i + 1);
+            c.setCode("BENCH-" + (i + 1));
+            if (kind == 0) {
+                c.setType("CART_WISE");
+                c.setPayloadJson("{\"threshold\":" + rnd.nextInt(50, 2000)
+                        + ",\"discountPercent\":" + rnd.nextInt(1, 30)
+                        + (rnd.nextBoolean() ? ",\"maxDiscount\":" + rnd.nextInt(10, 200) : "") + "}");
+            } else if (kind < 7) {
+                c.setType("PRODUCT_WISE");
+                c.setPayloadJson("{\"productIds\":" + ids(rnd, 1 + rnd.nextInt(5), productRange)
+                        + ",\"discountPercent\":" + rnd.nextInt(1, 50)
+                        + ",\"minQuantity\":" + rnd.nextInt(1, 3) + "}");
+            } else {
+                c.setType("BXGY");
+                c.setPayloadJson("{\"buyProductIds\":" + ids(rnd, 1 + rnd.nextInt(4), productRange)
+                        + ",\"buyRequiredCount\":" + rnd.nextInt(1, 4)
+                        + ",\"getProductIds\":" + ids(rnd, 1 + rnd.nextInt(3), productRange)
+                        + ",\"getQuantity\":1,\"repetitionLimit\":" + rnd.nextInt(0, 4) + "}");
+            }
+            coupons.add(c);
+        }
+        return coupons;
+    }
+
+    static CartDto cart(int items, double overlap, int productRange, long seed) {
+        Random rnd = new Random(seed);
+        List<CartItemDto> lines = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            CartItemDto item = new CartItemDto();
+            long productId = rnd.nextDouble() < overlap
+                    ? 1 + rnd.nextInt(productRange)
+                    : productRange + 1 + rnd.nextInt(productRange);
+            item.setProductId(productId);
+            item.setQuantity(1 + rnd.nextInt(5));
+            item.setPrice(BigDecimal.valueOf(100 + rnd.nextInt(20_000), 2));
+            lines.add(item);
+        }
+        CartDto cart = new CartDto();
+        cart.setItems(lines);
+        return cart;
+    }
+
+    /**
+     * The same promotion written in the rule DSL. CART_WISE translates exactly; PRODUCT_WISE
+     * becomes "at least minQuantity units of the products, percent off their lines", which sums
+     * the quantity over lines instead of checking it per line.
+     */
+    static Coupon asRule(Coupon c) {
+        JsonNode p;
+        try {
+            p = OM.readTree(c.getPayloadJson());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e);
+        }
+        String payload = switch (c.getType()) {
+            case "CART_WISE" -> "{\"when\":{\"cartTotal\":{\"min\":" + p.get("threshold") + "}},"
+                    + "\"then\":{\"percentOff\":" + p.get("discountPercent")
+                    + (p.has("maxDiscount") ? ",\"maxDiscount\":" + p.get("maxDiscount") : "") + "}}";
+            case "PRODUCT_WISE" -> "{\"when\":{\"quantity\":{\"of\":{\"products\":" + p.get("productIds") + "},"
+                    + "\"min\":" + p.get("minQuantity") + "}},"
+                    + "\"then\":{\"percentOff\":" + p.get("discountPercent")
+                    + ",\"of\":{\"products\":" + p.get("productIds") + "}}}";
+            default -> throw new IllegalArgumentException("No rule form for " + c.getType());
+        };
+        Coupon rule = new Coupon();
+        rule.setId(c.getId());
+        rule.setCode(c.getCode());
+        rule.setType("RULE");
+        rule.setPayloadJson(payload);
+        return rule;
+    }
+
+    private static String ids(SplittableRandom rnd, int count, int productRange) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(1 + rnd.nextInt(productRange));
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,62 @@
+package com.manugoswami.monk.bench;
+
+import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.processor.CartContext;
+import com.manugoswami.monk.processor.CouponProcessor;
+import com.manugoswami.monk.rule.CouponRule;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw processor cost over a prebuilt {@link CartContext}: every coupon of one type in a
+ * 1k catalog is checked and, when applicable, priced.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessorBenchmark {
+
+    @Param({"CART_WISE", "PRODUCT_WISE", "BXGY"})
+    String type;
+
+    @Param({"1", "50", "500"})
+    int cartItems;
+
+    @Param({"0.5"})
+    double overlap;
+
+    private CouponProcessor processor;
+    private CouponRule[] rules;
+    private CartContext cart;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Engine engine = new Engine(List.of(), 0);
+        processor = engine.processor(type);
+
+        List<CouponRule> compiled = new ArrayList<>();
+        for (Coupon c : Fixtures.catalog(1000, 1000, 42)) {
+            if (type.equals(c.getType())) {
+                compiled.add(processor.compile(c.getPayloadJson()));
+            }
+        }
+        rules = compiled.toArray(new CouponRule[0]);
+        cart = CartContext.of(Fixtures.cart(cartItems, overlap, 1000, 7));
+    }
+
+    @Benchmark
+    public void evaluate(Blackhole bh) {
+        for (CouponRule rule : rules) {
+            if (processor.isApplicable(cart, rule)) {
+                bh.consume(processor.calculateDiscount(cart, rule));
+            }
+        }
+    }
+}
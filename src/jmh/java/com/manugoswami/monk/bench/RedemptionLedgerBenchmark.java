@@ -0,0 +1,73 @@
+package com.manugoswami.monk.bench;
+
+import com.manugoswami.monk.MonkApplication;
+import com.manugoswami.monk.model.CouponRedemption;
+import com.manugoswami.monk.repository.CouponRedemptionRepository;
+import com.manugoswami.monk.service.RedemptionLedger;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Redemption write throughput from 8 checkout threads into the application's in-memory H2
+ * database: the batched ledger against one saved row per redemption. The ledger's queue is
+ * bounded, so once the writer falls behind, callers write inline and the measured rate is the
+ * sustainable one rather than the enqueue rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class RedemptionLedgerBenchmark {
+
+    @Param({"100", "500"})
+    int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private CouponRedemptionRepository repository;
+    private RedemptionLedger ledger;
+    private final AtomicLong users = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(MonkApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.jpa.show-sql=false",
+                        "spring.datasource.url=jdbc:h2:mem:ledger-" + batchSize + ";DB_CLOSE_DELAY=-1",
+                        "monk.redemption.ledger-batch-size=" + batchSize,
+                        "monk.redemption.queue-capacity=10000",
+                        "monk.redemption.max-latency-ms=50",
+                        "monk.redemption.enqueue-timeout-ms=5")
+                .run();
+        repository = context.getBean(CouponRedemptionRepository.class);
+        ledger = context.getBean(RedemptionLedger.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void batchedLedger() {
+        ledger.record(redemption());
+    }
+
+    @Benchmark
+    public CouponRedemption insertPerRedemption() {
+        return repository.save(redemption());
+    }
+
+    private CouponRedemption redemption() {
+        return new CouponRedemption(1L, "u" + users.incrementAndGet(), new BigDecimal("12.50"), Instant.now());
+    }
+}
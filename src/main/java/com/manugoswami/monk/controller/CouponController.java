@@ -1,13 +1,27 @@
 package com.manugoswami.monk.controller;
 
 import com.manugoswami.monk.dto.ApplicableCouponDto;
+import com.manugoswami.monk.dto.BestCouponsDto;
+import com.manugoswami.monk.dto.CartDeltaDto;
 import com.manugoswami.monk.dto.CartDto;
+import com.manugoswami.monk.dto.CartSessionDto;
+import com.manugoswami.monk.dto.CouponPageDto;
+import com.manugoswami.monk.dto.ImportReportDto;
 import com.manugoswami.monk.dto.UpdatedCartDto;
 import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.processor.CartContext;
+import com.manugoswami.monk.repository.CouponFilter;
+import com.manugoswami.monk.service.BatchEvaluationService;
+import com.manugoswami.monk.service.CartSessionService;
+import com.manugoswami.monk.service.CouponBulkService;
 import com.manugoswami.monk.service.CouponService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
@@ -15,9 +29,16 @@ import java.util.List;
 public class CouponController {
 
     private final CouponService service;
+    private final BatchEvaluationService batchService;
+    private final CouponBulkService bulkService;
+    private final CartSessionService sessionService;
 
-    public CouponController(CouponService service) {
+    public CouponController(CouponService service, BatchEvaluationService batchService, CouponBulkService bulkService,
+                            CartSessionService sessionService) {
         this.service = service;
+        this.batchService = batchService;
+        this.bulkService = bulkService;
+        this.sessionService = sessionService;
     }
 
     // CRUD
@@ -26,9 +47,26 @@ public class CouponController {
         return ResponseEntity.ok(service.create(coupon));
     }
 
+    // keyset-paginated; pass nextCursor back as ?after=, view=summary leaves out payloadJson
     @GetMapping("/coupons")
-    public ResponseEntity<List<Coupon>> list() {
-        return ResponseEntity.ok(service.getAll());
+    public ResponseEntity<CouponPageDto<?>> list(CouponFilter filter,
+                                                 @RequestParam(required = false) Long after,
+                                                 @RequestParam(defaultValue = "100") int limit,
+                                                 @RequestParam(defaultValue = "full") String view) {
+        return ResponseEntity.ok(service.list(filter, after, limit, "summary".equals(view)));
+    }
+
+    // one coupon per NDJSON line; responds with per-line errors for the ones that were rejected
+    @PostMapping(value = "/coupons/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ImportReportDto> importCoupons(InputStream body) throws IOException {
+        return ResponseEntity.ok(bulkService.importNdjson(body));
+    }
+
+    @GetMapping(value = "/coupons/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportCoupons() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(bulkService::exportNdjson);
     }
 
     @GetMapping("/coupons/{id}")
@@ -47,14 +85,60 @@ public class CouponController {
         return ResponseEntity.noContent().build();
     }
 
-    // Business endpoints
+    // Business endpoints: carts are read straight into CartContext; JSON, Smile
+    // (application/x-jackson-smile) and CBOR (application/cbor) are accepted and returned per Accept
     @PostMapping("/applicable-coupons")
-    public ResponseEntity<List<ApplicableCouponDto>> applicable(@RequestBody CartDto cart) {
+    public ResponseEntity<List<ApplicableCouponDto>> applicable(@RequestBody CartContext cart) {
         return ResponseEntity.ok(service.findApplicableCoupons(cart));
     }
 
+    // accepts a JSON array or NDJSON of carts; streams one NDJSON line per cart, in order
+    @PostMapping(value = "/applicable-coupons/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> applicableBatch(InputStream body) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> batchService.evaluate(body, out));
+    }
+
+    // cart sessions: send item deltas instead of the whole cart; each response carries the applicable coupons
+    @PostMapping("/cart-sessions")
+    public ResponseEntity<CartSessionDto> createSession(@RequestBody(required = false) CartDto cart) {
+        return ResponseEntity.ok(sessionService.create(cart));
+    }
+
+    @GetMapping("/cart-sessions/{id}")
+    public ResponseEntity<CartSessionDto> getSession(@PathVariable String id) {
+        return ResponseEntity.ok(sessionService.get(id));
+    }
+
+    @PostMapping("/cart-sessions/{id}/deltas")
+    public ResponseEntity<CartSessionDto> applyDeltas(@PathVariable String id, @RequestBody List<CartDeltaDto> deltas) {
+        return ResponseEntity.ok(sessionService.apply(id, deltas));
+    }
+
+    @DeleteMapping("/cart-sessions/{id}")
+    public ResponseEntity<Void> deleteSession(@PathVariable String id) {
+        sessionService.delete(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/best-coupons")
+    public ResponseEntity<BestCouponsDto> best(@RequestBody CartContext cart) {
+        return ResponseEntity.ok(service.findBestCoupons(cart));
+    }
+
     @PostMapping("/apply-coupon/{id}")
-    public ResponseEntity<UpdatedCartDto> apply(@PathVariable Long id, @RequestBody CartDto cart) {
+    public ResponseEntity<UpdatedCartDto> apply(@PathVariable Long id, @RequestBody CartContext cart) {
         return ResponseEntity.ok(service.applyCoupon(id, cart));
     }
+
+    // checkout: applies the coupon and counts it against its redemption limits
+    @PostMapping("/redeem-coupon/{id}")
+    public ResponseEntity<UpdatedCartDto> redeem(@PathVariable Long id,
+                                                 @RequestHeader(value = "X-User-Id", required = false) String userId,
+                                                 @RequestBody CartContext cart) {
+        return ResponseEntity.ok(service.redeemCoupon(id, userId, cart));
+    }
 }
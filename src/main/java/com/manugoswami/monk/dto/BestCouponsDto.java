@@ -0,0 +1,18 @@
+package com.manugoswami.monk.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BestCouponsDto {
+    private List<ApplicableCouponDto> coupons;
+    private BigDecimal totalDiscount;
+    // false when the search budget ran out before the search space was exhausted
+    private boolean optimal;
+}
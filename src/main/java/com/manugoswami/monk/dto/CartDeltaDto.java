@@ -0,0 +1,24 @@
+package com.manugoswami.monk.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CartDeltaDto {
+    public enum Op { ADD, REMOVE, SET }
+
+    private Op op;
+    private Long productId;
+    // ADD: units to add; REMOVE: units to take away, all when null; SET: new quantity, 0 removes
+    private Integer quantity;
+    // required when the product is not in the cart yet; replaces the unit price otherwise
+    private BigDecimal price;
+    // replaces the product's tags when present
+    private List<String> tags;
+}
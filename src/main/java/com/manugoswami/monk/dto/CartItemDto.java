@@ -3,10 +3,13 @@ package com.manugoswami.monk.dto;
 import lombok.Data;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 @Data
 public class CartItemDto {
     private Long productId;
     private Integer quantity;
     private BigDecimal price;
+    // category tags, matched by RULE coupons
+    private List<String> tags;
 }
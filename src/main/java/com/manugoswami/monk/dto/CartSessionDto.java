@@ -0,0 +1,19 @@
+package com.manugoswami.monk.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CartSessionDto {
+    private String sessionId;
+    private List<CartItemDto> items;
+    private BigDecimal totalPrice;
+    // same result as /applicable-coupons for these items
+    private List<ApplicableCouponDto> applicableCoupons;
+}
@@ -0,0 +1,16 @@
+package com.manugoswami.monk.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CouponPageDto<T> {
+    private List<T> items;
+    // pass as ?after= to get the next page; null on the last page
+    private Long nextCursor;
+}
@@ -0,0 +1,23 @@
+package com.manugoswami.monk.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// List view of a coupon: everything except payloadJson. Constructor order is used by the listing query.
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CouponSummaryDto {
+    private Long id;
+    private String code;
+    private String type;
+    private Boolean enabled;
+    private Instant expiresAt;
+    private Boolean stackable;
+    private String stackGroup;
+    private Integer maxRedemptions;
+    private Integer maxRedemptionsPerUser;
+}
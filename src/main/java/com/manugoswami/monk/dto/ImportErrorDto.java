@@ -0,0 +1,14 @@
+package com.manugoswami.monk.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportErrorDto {
+    private long line; // 1-based line in the NDJSON input
+    private String code;
+    private String message;
+}
@@ -0,0 +1,15 @@
+package com.manugoswami.monk.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ImportReportDto {
+    private long imported;
+    private long failed;
+    // first failures only; see errorsTruncated
+    private List<ImportErrorDto> errors = new ArrayList<>();
+    private boolean errorsTruncated;
+}
@@ -0,0 +1,202 @@
+package com.manugoswami.monk.index;
+
+import com.manugoswami.monk.rule.CartWiseRule;
+import com.manugoswami.monk.util.Money;
+
+import java.util.*;
+
+/**
+ * CART_WISE coupons sorted by threshold. The coupons applicable to a cart total are
+ * a prefix of that order, found with one binary search.
+ *
+ * For "best coupon for this total" the index also precomputes the upper envelope of
+ * min(total * percent, maxDiscount) over the applicable prefix: between consecutive
+ * thresholds and cap saturation points the winner is either the saturated coupon
+ * with the largest cap or the unsaturated coupon with the largest percent, so each
+ * segment stores those two and a lookup is a binary search plus two evaluations.
+ */
+final class CartWiseTierIndex {
+
+    static final CartWiseTierIndex EMPTY = build(List.of());
+
+    // parallel arrays sorted by (threshold, ordinal)
+    private final long[] thresholds;
+    private final int[] ordinals;
+    private final CartWiseRule[] rules;
+
+    // envelope segments sorted by start; best* hold positions in the arrays above, or -1
+    private final long[] segmentStarts;
+    private final int[] bestSaturated;
+    private final int[] bestUnsaturated;
+
+    private CartWiseTierIndex(long[] thresholds, int[] ordinals, CartWiseRule[] rules,
+                              long[] segmentStarts, int[] bestSaturated, int[] bestUnsaturated) {
+        this.thresholds = thresholds;
+        this.ordinals = ordinals;
+        this.rules = rules;
+        this.segmentStarts = segmentStarts;
+        this.bestSaturated = bestSaturated;
+        this.bestUnsaturated = bestUnsaturated;
+    }
+
+    static final class Entry {
+        final int ordinal;
+        final CartWiseRule rule;
+
+        Entry(int ordinal, CartWiseRule rule) {
+            this.ordinal = ordinal;
+            this.rule = rule;
+        }
+    }
+
+    static CartWiseTierIndex build(List<Entry> entries) {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.<Entry>comparingLong(e -> e.rule.getThresholdCents())
+                .thenComparingInt(e -> e.ordinal));
+        int n = sorted.size();
+        long[] thresholds = new long[n];
+        int[] ordinals = new int[n];
+        CartWiseRule[] rules = new CartWiseRule[n];
+        for (int i = 0; i < n; i++) {
+            thresholds[i] = sorted.get(i).rule.getThresholdCents();
+            ordinals[i] = sorted.get(i).ordinal;
+            rules[i] = sorted.get(i).rule;
+        }
+
+        // sweep over thresholds and saturation points (total at which the cap is reached)
+        // smallest total with total * bps / 10000 >= cap; Long.MAX_VALUE when never reached
+        long[] saturation = new long[n];
+        TreeMap<Long, List<Integer>> saturateAt = new TreeMap<>();
+        for (int i = 0; i < n; i++) {
+            CartWiseRule r = rules[i];
+            saturation[i] = Long.MAX_VALUE;
+            if (r.isCapped() && r.getPercentBps() > 0) {
+                long cap = r.getMaxDiscountCents();
+                if (cap <= Long.MAX_VALUE / Money.BPS_SCALE) {
+                    long scaled = cap * Money.BPS_SCALE;
+                    saturation[i] = scaled / r.getPercentBps() + (scaled % r.getPercentBps() == 0 ? 0 : 1);
+                }
+            }
+        }
+
+        PriorityQueue<Integer> unsaturated = new PriorityQueue<>((a, b) -> {
+            int c = Integer.compare(rules[b].getPercentBps(), rules[a].getPercentBps());
+            return c != 0 ? c : Integer.compare(ordinals[a], ordinals[b]);
+        });
+        boolean[] saturated = new boolean[n];
+        int bestCap = -1;
+
+        List<Long> starts = new ArrayList<>();
+        List<Integer> satBest = new ArrayList<>();
+        List<Integer> unsatBest = new ArrayList<>();
+
+        int next = 0;
+        while (next < n || !saturateAt.isEmpty()) {
+            long at = next < n ? thresholds[next] : Long.MAX_VALUE;
+            if (!saturateAt.isEmpty() && saturateAt.firstKey() < at) {
+                at = saturateAt.firstKey();
+            }
+            while (next < n && thresholds[next] == at) {
+                int i = next++;
+                if (saturation[i] <= at) {
+                    saturated[i] = true;
+                    bestCap = betterCap(rules, ordinals, bestCap, i);
+                } else {
+                    unsaturated.add(i);
+                    if (saturation[i] != Long.MAX_VALUE) {
+                        saturateAt.computeIfAbsent(saturation[i], k -> new ArrayList<>()).add(i);
+                    }
+                }
+            }
+            List<Integer> reached = saturateAt.remove(at);
+            if (reached != null) {
+                for (int i : reached) {
+                    saturated[i] = true;
+                    bestCap = betterCap(rules, ordinals, bestCap, i);
+                }
+            }
+            while (!unsaturated.isEmpty() && saturated[unsaturated.peek()]) {
+                unsaturated.poll();
+            }
+            starts.add(at);
+            satBest.add(bestCap);
+            unsatBest.add(unsaturated.isEmpty() ? -1 : unsaturated.peek());
+        }
+
+        return new CartWiseTierIndex(thresholds, ordinals, rules,
+                starts.stream().mapToLong(Long::longValue).toArray(),
+                satBest.stream().mapToInt(Integer::intValue).toArray(),
+                unsatBest.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static int betterCap(CartWiseRule[] rules, int[] ordinals, int current, int candidate) {
+        if (current < 0) {
+            return candidate;
+        }
+        int c = Long.compare(rules[candidate].getMaxDiscountCents(), rules[current].getMaxDiscountCents());
+        return c > 0 || (c == 0 && ordinals[candidate] < ordinals[current]) ? candidate : current;
+    }
+
+    int size() {
+        return ordinals.length;
+    }
+
+    // the entries this index was built from, in threshold order
+    List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>(ordinals.length);
+        for (int i = 0; i < ordinals.length; i++) {
+            entries.add(new Entry(ordinals[i], rules[i]));
+        }
+        return entries;
+    }
+
+    // number of coupons whose threshold is <= total; they are the first entries in threshold order
+    int applicableCount(long totalCents) {
+        int lo = 0;
+        int hi = thresholds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (thresholds[mid] <= totalCents) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    int ordinalAt(int position) {
+        return ordinals[position];
+    }
+
+    // snapshot ordinal of the CART_WISE coupon with the largest discount for total, or -1.
+    // Equal discounts go to the lower ordinal, except that of two uncapped-at-this-total coupons
+    // whose percents round to the same discount, the higher percent wins.
+    int best(long totalCents) {
+        int lo = 0;
+        int hi = segmentStarts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (segmentStarts[mid] <= totalCents) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int segment = lo - 1;
+        if (segment < 0) {
+            return -1;
+        }
+        int sat = bestSaturated[segment];
+        int unsat = bestUnsaturated[segment];
+        if (sat < 0 || unsat < 0) {
+            int only = sat < 0 ? unsat : sat;
+            return only < 0 ? -1 : ordinals[only];
+        }
+        int c = Long.compare(rules[sat].discountFor(totalCents), rules[unsat].discountFor(totalCents));
+        if (c == 0) {
+            return Math.min(ordinals[sat], ordinals[unsat]);
+        }
+        return c > 0 ? ordinals[sat] : ordinals[unsat];
+    }
+}
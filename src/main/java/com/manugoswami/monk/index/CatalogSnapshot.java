@@ -0,0 +1,514 @@
+package com.manugoswami.monk.index;
+
+import com.manugoswami.monk.processor.CartContext;
+import com.manugoswami.monk.rule.CartWiseRule;
+import com.manugoswami.monk.util.LongIntHashMap;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Immutable view of the active coupons at one catalog version, together with the
+ * lookup structures used to narrow a cart down to the coupons that can match it.
+ *
+ * A coupon's ordinal is its position in id order, which is what keeps candidate lists sorted
+ * by id without a sort. {@link #with} derives the next version from this one: it copies the
+ * flat arrays but rebuilds only the postings lists and CART_WISE tier indexes the changed
+ * coupons appear in, and leaves a removed coupon's ordinal empty. Changes that would shift
+ * ordinals (an id below the highest one that is not already indexed), batches touching a large
+ * part of the catalog, and snapshots that are mostly empty ordinals are rebuilt in full.
+ */
+public final class CatalogSnapshot {
+
+    static final CatalogSnapshot EMPTY = of(0, List.of());
+
+    // with() rebuilds from scratch when changes exceed 1/REBUILD_RATIO of the ordinals
+    private static final int REBUILD_RATIO = 16;
+
+    private final long version;
+    // coupons by ordinal, null for ones removed since the last full build
+    private final CompiledCoupon[] slots;
+    // ids by ordinal, ascending; kept for removed ordinals too
+    private final long[] ids;
+    private final int size;
+    private volatile List<CompiledCoupon> coupons;
+    private final Instant nextExpiry;
+
+    // productId -> slot in postings; postings hold ordinals, ascending
+    private final LongIntHashMap productSlots;
+    private final int[][] postings;
+    // CART_WISE coupons by threshold, all of them and per stacking class
+    // (null key for the non-stackable ones, otherwise the stack group)
+    private final CartWiseTierIndex cartWiseTiers;
+    private final Map<String, CartWiseTierIndex> cartWiseClasses;
+    // ordinals of other coupons that do not require any particular product
+    private final BitSet unconditional;
+    // productId -> slot in affectPostings: the non-CART_WISE coupons whose result that product's
+    // lines can change; affectedByAny holds those that may depend on any line
+    private final LongIntHashMap affectSlots;
+    private final int[][] affectPostings;
+    private final BitSet affectedByAny;
+
+    private CatalogSnapshot(long version, CompiledCoupon[] slots, long[] ids, int size, Instant nextExpiry,
+                            LongIntHashMap productSlots, int[][] postings,
+                            CartWiseTierIndex cartWiseTiers, Map<String, CartWiseTierIndex> cartWiseClasses,
+                            BitSet unconditional, LongIntHashMap affectSlots, int[][] affectPostings,
+                            BitSet affectedByAny) {
+        this.version = version;
+        this.slots = slots;
+        this.ids = ids;
+        this.size = size;
+        this.nextExpiry = nextExpiry;
+        this.productSlots = productSlots;
+        this.postings = postings;
+        this.cartWiseTiers = cartWiseTiers;
+        this.cartWiseClasses = cartWiseClasses;
+        this.unconditional = unconditional;
+        this.affectSlots = affectSlots;
+        this.affectPostings = affectPostings;
+        this.affectedByAny = affectedByAny;
+    }
+
+    static CatalogSnapshot of(long version, Collection<CompiledCoupon> active) {
+        CompiledCoupon[] slots = active.toArray(new CompiledCoupon[0]);
+        Arrays.sort(slots, Comparator.comparing(CompiledCoupon::getId));
+        long[] ids = new long[slots.length];
+
+        Instant nextExpiry = null;
+        LongIntHashMap productSlots = new LongIntHashMap();
+        List<List<Integer>> lists = new ArrayList<>();
+        List<CartWiseTierIndex.Entry> tiers = new ArrayList<>();
+        Map<String, List<CartWiseTierIndex.Entry>> classTiers = new HashMap<>();
+        BitSet unconditional = new BitSet(slots.length);
+        LongIntHashMap affectSlots = new LongIntHashMap();
+        List<List<Integer>> affectLists = new ArrayList<>();
+        BitSet affectedByAny = new BitSet(slots.length);
+
+        for (int ordinal = 0; ordinal < slots.length; ordinal++) {
+            CompiledCoupon c = slots[ordinal];
+            ids[ordinal] = c.getId();
+            if (c.getExpiresAt() != null && (nextExpiry == null || c.getExpiresAt().isBefore(nextExpiry))) {
+                nextExpiry = c.getExpiresAt();
+            }
+
+            if (c.getRule() instanceof CartWiseRule cartWise) {
+                CartWiseTierIndex.Entry entry = new CartWiseTierIndex.Entry(ordinal, cartWise);
+                tiers.add(entry);
+                classTiers.computeIfAbsent(stackingClass(c), k -> new ArrayList<>()).add(entry);
+                continue;
+            }
+            long[] affected = c.getRule().affectedProductIds();
+            if (affected == null) {
+                affectedByAny.set(ordinal);
+            } else {
+                for (long productId : affected) {
+                    addPosting(affectSlots, affectLists, productId, ordinal);
+                }
+            }
+            long[] required = c.getRule().requiredProductIds();
+            if (required == null) {
+                unconditional.set(ordinal);
+                continue;
+            }
+            for (long productId : required) {
+                addPosting(productSlots, lists, productId, ordinal);
+            }
+        }
+
+        Map<String, CartWiseTierIndex> classes = new HashMap<>();
+        classTiers.forEach((k, entries) -> classes.put(k, CartWiseTierIndex.build(entries)));
+        return new CatalogSnapshot(version, slots, ids, slots.length, nextExpiry,
+                productSlots, toArrays(lists), CartWiseTierIndex.build(tiers), classes, unconditional,
+                affectSlots, toArrays(affectLists), affectedByAny);
+    }
+
+    /**
+     * The next catalog version: this one with the given coupons added or replaced, and the ids
+     * mapped to null removed. Ids that are not indexed are ignored for removal.
+     */
+    CatalogSnapshot with(long version, Map<Long, CompiledCoupon> changes) {
+        long maxId = ids.length == 0 ? Long.MIN_VALUE : ids[ids.length - 1];
+        List<CompiledCoupon> appended = new ArrayList<>();
+        boolean rebuild = changes.size() > ids.length / REBUILD_RATIO;
+        for (Map.Entry<Long, CompiledCoupon> e : changes.entrySet()) {
+            if (rebuild || e.getValue() == null || Arrays.binarySearch(ids, e.getKey()) >= 0) {
+                continue;
+            }
+            if (e.getKey() <= maxId) {
+                rebuild = true;
+            } else {
+                appended.add(e.getValue());
+            }
+        }
+        if (rebuild) {
+            Map<Long, CompiledCoupon> next = new HashMap<>();
+            for (CompiledCoupon c : getCoupons()) {
+                next.put(c.getId(), c);
+            }
+            changes.forEach((id, c) -> {
+                if (c == null) {
+                    next.remove(id);
+                } else {
+                    next.put(id, c);
+                }
+            });
+            return of(version, next.values());
+        }
+
+        appended.sort(Comparator.comparing(CompiledCoupon::getId));
+        Update u = new Update(this, appended.size());
+        for (Map.Entry<Long, CompiledCoupon> e : changes.entrySet()) {
+            int ordinal = Arrays.binarySearch(ids, e.getKey());
+            if (ordinal >= 0) {
+                u.replace(ordinal, e.getValue());
+            }
+        }
+        int ordinal = ids.length;
+        for (CompiledCoupon c : appended) {
+            u.ids[ordinal] = c.getId();
+            u.replace(ordinal++, c);
+        }
+        // mostly empty ordinals: compact them away
+        if (u.size * 2 < u.slots.length) {
+            List<CompiledCoupon> live = new ArrayList<>(u.size);
+            for (CompiledCoupon c : u.slots) {
+                if (c != null) {
+                    live.add(c);
+                }
+            }
+            return of(version, live);
+        }
+        return u.build(version);
+    }
+
+    // copy-on-write state of one with() call
+    private static final class Update {
+        final CompiledCoupon[] slots;
+        final long[] ids;
+        int size;
+        Instant nextExpiry;
+        boolean expiryRemoved;
+        final Postings required;
+        final Postings affected;
+        final BitSet unconditional;
+        final BitSet affectedByAny;
+        final CartWiseTierIndex cartWiseTiers;
+        final Map<String, CartWiseTierIndex> cartWiseClasses;
+        // CART_WISE ordinals whose coupon changed, and the entries to index for them
+        final Set<Integer> cartWiseRemoved = new HashSet<>();
+        final Map<String, List<CartWiseTierIndex.Entry>> cartWiseAdded = new HashMap<>();
+        final Set<String> classesTouched = new HashSet<>();
+
+        Update(CatalogSnapshot s, int appended) {
+            slots = Arrays.copyOf(s.slots, s.slots.length + appended);
+            ids = Arrays.copyOf(s.ids, s.ids.length + appended);
+            size = s.size;
+            nextExpiry = s.nextExpiry;
+            required = new Postings(s.productSlots, s.postings);
+            affected = new Postings(s.affectSlots, s.affectPostings);
+            unconditional = (BitSet) s.unconditional.clone();
+            affectedByAny = (BitSet) s.affectedByAny.clone();
+            cartWiseTiers = s.cartWiseTiers;
+            cartWiseClasses = s.cartWiseClasses;
+        }
+
+        void replace(int ordinal, CompiledCoupon c) {
+            CompiledCoupon old = slots[ordinal];
+            if (old != null) {
+                unindex(old, ordinal);
+                size--;
+            }
+            slots[ordinal] = c;
+            if (c != null) {
+                index(c, ordinal);
+                size++;
+            }
+        }
+
+        private void index(CompiledCoupon c, int ordinal) {
+            if (c.getExpiresAt() != null && (nextExpiry == null || c.getExpiresAt().isBefore(nextExpiry))) {
+                nextExpiry = c.getExpiresAt();
+            }
+            if (c.getRule() instanceof CartWiseRule cartWise) {
+                String key = stackingClass(c);
+                classesTouched.add(key);
+                cartWiseAdded.computeIfAbsent(key, k -> new ArrayList<>())
+                        .add(new CartWiseTierIndex.Entry(ordinal, cartWise));
+                return;
+            }
+            long[] affectedIds = c.getRule().affectedProductIds();
+            if (affectedIds == null) {
+                affectedByAny.set(ordinal);
+            } else {
+                for (long productId : affectedIds) {
+                    affected.add(productId, ordinal);
+                }
+            }
+            long[] requiredIds = c.getRule().requiredProductIds();
+            if (requiredIds == null) {
+                unconditional.set(ordinal);
+            } else {
+                for (long productId : requiredIds) {
+                    required.add(productId, ordinal);
+                }
+            }
+        }
+
+        private void unindex(CompiledCoupon c, int ordinal) {
+            if (c.getExpiresAt() != null && c.getExpiresAt().equals(nextExpiry)) {
+                expiryRemoved = true;
+            }
+            if (c.getRule() instanceof CartWiseRule) {
+                classesTouched.add(stackingClass(c));
+                cartWiseRemoved.add(ordinal);
+                return;
+            }
+            long[] affectedIds = c.getRule().affectedProductIds();
+            if (affectedIds == null) {
+                affectedByAny.clear(ordinal);
+            } else {
+                for (long productId : affectedIds) {
+                    affected.remove(productId, ordinal);
+                }
+            }
+            long[] requiredIds = c.getRule().requiredProductIds();
+            if (requiredIds == null) {
+                unconditional.clear(ordinal);
+            } else {
+                for (long productId : requiredIds) {
+                    required.remove(productId, ordinal);
+                }
+            }
+        }
+
+        CatalogSnapshot build(long version) {
+            if (expiryRemoved) {
+                nextExpiry = null;
+                for (CompiledCoupon c : slots) {
+                    if (c != null && c.getExpiresAt() != null && (nextExpiry == null || c.getExpiresAt().isBefore(nextExpiry))) {
+                        nextExpiry = c.getExpiresAt();
+                    }
+                }
+            }
+            CartWiseTierIndex tiers = cartWiseTiers;
+            Map<String, CartWiseTierIndex> classes = cartWiseClasses;
+            if (!classesTouched.isEmpty()) {
+                List<CartWiseTierIndex.Entry> all = retained(cartWiseTiers);
+                cartWiseAdded.values().forEach(all::addAll);
+                tiers = CartWiseTierIndex.build(all);
+
+                classes = new HashMap<>(cartWiseClasses);
+                for (String key : classesTouched) {
+                    CartWiseTierIndex current = cartWiseClasses.get(key);
+                    List<CartWiseTierIndex.Entry> entries = current == null ? new ArrayList<>() : retained(current);
+                    entries.addAll(cartWiseAdded.getOrDefault(key, List.of()));
+                    if (entries.isEmpty()) {
+                        classes.remove(key);
+                    } else {
+                        classes.put(key, CartWiseTierIndex.build(entries));
+                    }
+                }
+            }
+            return new CatalogSnapshot(version, slots, ids, size, nextExpiry,
+                    required.slots, required.lists, tiers, classes, unconditional,
+                    affected.slots, affected.lists, affectedByAny);
+        }
+
+        private List<CartWiseTierIndex.Entry> retained(CartWiseTierIndex index) {
+            List<CartWiseTierIndex.Entry> entries = index.entries();
+            entries.removeIf(e -> cartWiseRemoved.contains(e.ordinal));
+            return entries;
+        }
+    }
+
+    // postings copied on first write; lists are replaced, never modified
+    private static final class Postings {
+        LongIntHashMap slots;
+        int[][] lists;
+        private boolean slotsCopied;
+        private boolean listsCopied;
+
+        Postings(LongIntHashMap slots, int[][] lists) {
+            this.slots = slots;
+            this.lists = lists;
+        }
+
+        void add(long productId, int ordinal) {
+            int slot = slots.get(productId, -1);
+            if (slot < 0) {
+                if (!slotsCopied) {
+                    slots = slots.copy();
+                    slotsCopied = true;
+                }
+                slot = lists.length;
+                slots.put(productId, slot);
+                lists = Arrays.copyOf(lists, slot + 1);
+                lists[slot] = new int[0];
+                listsCopied = true;
+            }
+            int[] list = lists[slot];
+            int at = Arrays.binarySearch(list, ordinal);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            int[] next = new int[list.length + 1];
+            System.arraycopy(list, 0, next, 0, at);
+            next[at] = ordinal;
+            System.arraycopy(list, at, next, at + 1, list.length - at);
+            set(slot, next);
+        }
+
+        void remove(long productId, int ordinal) {
+            int slot = slots.get(productId, -1);
+            if (slot < 0) {
+                return;
+            }
+            int[] list = lists[slot];
+            int at = Arrays.binarySearch(list, ordinal);
+            if (at < 0) {
+                return;
+            }
+            int[] next = new int[list.length - 1];
+            System.arraycopy(list, 0, next, 0, at);
+            System.arraycopy(list, at + 1, next, at, list.length - at - 1);
+            set(slot, next);
+        }
+
+        private void set(int slot, int[] list) {
+            if (!listsCopied) {
+                lists = lists.clone();
+                listsCopied = true;
+            }
+            lists[slot] = list;
+        }
+    }
+
+    // null for non-stackable coupons, which compete with each other rather than within a stack group
+    private static String stackingClass(CompiledCoupon c) {
+        return c.isStackable() ? c.getStackGroup() : null;
+    }
+
+    private static void addPosting(LongIntHashMap slots, List<List<Integer>> lists, long productId, int ordinal) {
+        int slot = slots.get(productId, -1);
+        if (slot < 0) {
+            slot = lists.size();
+            slots.put(productId, slot);
+            lists.add(new ArrayList<>());
+        }
+        lists.get(slot).add(ordinal);
+    }
+
+    private static int[][] toArrays(List<List<Integer>> lists) {
+        int[][] arrays = new int[lists.size()][];
+        for (int slot = 0; slot < arrays.length; slot++) {
+            arrays[slot] = lists.get(slot).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return arrays;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // active coupons ordered by id
+    public List<CompiledCoupon> getCoupons() {
+        List<CompiledCoupon> list = coupons;
+        if (list == null) {
+            List<CompiledCoupon> live = new ArrayList<>(size);
+            for (CompiledCoupon c : slots) {
+                if (c != null) {
+                    live.add(c);
+                }
+            }
+            coupons = list = Collections.unmodifiableList(live);
+        }
+        return list;
+    }
+
+    public CompiledCoupon get(Long id) {
+        if (id == null) {
+            return null;
+        }
+        int ordinal = Arrays.binarySearch(ids, id);
+        return ordinal < 0 ? null : slots[ordinal];
+    }
+
+    public Instant getNextExpiry() {
+        return nextExpiry;
+    }
+
+    // coupons that can possibly apply to the cart, ordered by id
+    public List<CompiledCoupon> candidates(CartContext cart) {
+        BitSet hits = nonCartWiseHits(cart);
+        int applicable = cartWiseTiers.applicableCount(cart.getTotalCents());
+        for (int i = 0; i < applicable; i++) {
+            hits.set(cartWiseTiers.ordinalAt(i));
+        }
+        return select(hits);
+    }
+
+    // candidates other than CART_WISE coupons, ordered by id
+    public List<CompiledCoupon> nonCartWiseCandidates(CartContext cart) {
+        return select(nonCartWiseHits(cart));
+    }
+
+    private BitSet nonCartWiseHits(CartContext cart) {
+        BitSet hits = (BitSet) unconditional.clone();
+        for (long productId : cart.distinctProductIds()) {
+            int slot = productSlots.get(productId, -1);
+            if (slot >= 0) {
+                for (int ordinal : postings[slot]) {
+                    hits.set(ordinal);
+                }
+            }
+        }
+        return hits;
+    }
+
+    // non-CART_WISE coupons whose result can change when lines of these products change, ordered by id
+    public List<CompiledCoupon> affectedBy(long[] productIds) {
+        BitSet hits = (BitSet) affectedByAny.clone();
+        for (long productId : productIds) {
+            int slot = affectSlots.get(productId, -1);
+            if (slot >= 0) {
+                for (int ordinal : affectPostings[slot]) {
+                    hits.set(ordinal);
+                }
+            }
+        }
+        return select(hits);
+    }
+
+    // CART_WISE coupons whose threshold the total reaches, ordered by id
+    public List<CompiledCoupon> cartWiseCandidates(long cartTotalCents) {
+        BitSet hits = new BitSet(slots.length);
+        int applicable = cartWiseTiers.applicableCount(cartTotalCents);
+        for (int i = 0; i < applicable; i++) {
+            hits.set(cartWiseTiers.ordinalAt(i));
+        }
+        return select(hits);
+    }
+
+    private List<CompiledCoupon> select(BitSet ordinals) {
+        List<CompiledCoupon> out = new ArrayList<>(ordinals.cardinality());
+        for (int i = ordinals.nextSetBit(0); i >= 0; i = ordinals.nextSetBit(i + 1)) {
+            out.add(slots[i]);
+        }
+        return out;
+    }
+
+    // The largest-discount CART_WISE coupon of each stacking class (non-stackable, or one stack
+    // group) that applies to the total. These claim no lines, so the optimizer never picks any
+    // other CART_WISE coupon: it uses one non-stackable coupon or one per stack group.
+    public List<CompiledCoupon> bestCartWisePerStackingClass(long cartTotalCents) {
+        List<CompiledCoupon> out = new ArrayList<>(cartWiseClasses.size());
+        for (CartWiseTierIndex tiers : cartWiseClasses.values()) {
+            int ordinal = tiers.best(cartTotalCents);
+            if (ordinal >= 0) {
+                out.add(slots[ordinal]);
+            }
+        }
+        return out;
+    }
+}
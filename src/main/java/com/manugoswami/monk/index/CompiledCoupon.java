@@ -0,0 +1,22 @@
+package com.manugoswami.monk.index;
+
+import com.manugoswami.monk.processor.CouponProcessor;
+import com.manugoswami.monk.rule.CouponRule;
+import lombok.Value;
+
+import java.time.Instant;
+
+// Active coupon as held by the index: metadata plus its compiled rule and processor.
+@Value
+public class CompiledCoupon {
+    Long id;
+    String code;
+    String type;
+    Instant expiresAt;
+    boolean stackable;
+    String stackGroup; // resolved: the coupon's stackGroup, or its type when unset
+    int maxRedemptions; // 0 = unlimited
+    int maxRedemptionsPerUser; // 0 = unlimited
+    CouponProcessor processor;
+    CouponRule rule;
+}
@@ -0,0 +1,61 @@
+package com.manugoswami.monk.index;
+
+import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.processor.CouponProcessor;
+import com.manugoswami.monk.processor.ProcessorRegistry;
+import com.manugoswami.monk.rule.CouponRule;
+import org.springframework.stereotype.Component;
+
+@Component
+public class CouponCompiler {
+
+    private final ProcessorRegistry registry;
+
+    public CouponCompiler(ProcessorRegistry registry) {
+        this.registry = registry;
+    }
+
+    // throws IllegalArgumentException for unsupported types and invalid payloads
+    public CouponRule compileRule(Coupon coupon) {
+        limit(coupon.getMaxRedemptions(), "maxRedemptions");
+        limit(coupon.getMaxRedemptionsPerUser(), "maxRedemptionsPerUser");
+        return processorFor(coupon).compile(coupon.getPayloadJson());
+    }
+
+    public CompiledCoupon compile(Coupon coupon, CouponRule rule) {
+        return new CompiledCoupon(
+                coupon.getId(),
+                coupon.getCode(),
+                coupon.getType(),
+                coupon.getExpiresAt(),
+                Boolean.TRUE.equals(coupon.getStackable()),
+                coupon.getStackGroup() != null ? coupon.getStackGroup() : coupon.getType(),
+                limit(coupon.getMaxRedemptions(), "maxRedemptions"),
+                limit(coupon.getMaxRedemptionsPerUser(), "maxRedemptionsPerUser"),
+                processorFor(coupon),
+                rule);
+    }
+
+    public CompiledCoupon compile(Coupon coupon) {
+        return compile(coupon, compileRule(coupon));
+    }
+
+    // null means unlimited and maps to 0
+    private static int limit(Integer value, String field) {
+        if (value == null) {
+            return 0;
+        }
+        if (value < 1) {
+            throw new IllegalArgumentException(field + " must be at least 1");
+        }
+        return value;
+    }
+
+    private CouponProcessor processorFor(Coupon coupon) {
+        CouponProcessor p = registry.getProcessor(coupon.getType());
+        if (p == null) {
+            throw new IllegalArgumentException("Unsupported coupon type: " + coupon.getType());
+        }
+        return p;
+    }
+}
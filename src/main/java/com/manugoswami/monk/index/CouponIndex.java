@@ -0,0 +1,382 @@
+package com.manugoswami.monk.index;
+
+import com.manugoswami.monk.metrics.CouponMetrics;
+import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.repository.CouponRepository;
+import com.manugoswami.monk.rule.CouponRule;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resident copy of the active coupon catalog. Readers get an immutable, versioned
+ * {@link CatalogSnapshot}; writers publish a new snapshot on every create/update/delete.
+ *
+ * Changes made on other nodes arrive through {@link #apply(Coupon)} and {@link #applyDelete(Long)}.
+ * The entity version of every coupon loaded or changed since startup is remembered (including
+ * ones later disabled or deleted), so duplicate, replayed or out-of-order changes are ignored,
+ * whether they come from this node's writes or from other nodes.
+ *
+ * Expired coupons are dropped by a timer armed for the snapshot's nearest expiry, so the
+ * catalog shrinks without waiting for a reader or a reload.
+ *
+ * When {@code monk.snapshot.file} is set, the catalog is also written there periodically
+ * (see {@link SnapshotFile}). On startup that file is mapped and served right away while the
+ * database load runs in the background; changes arriving meanwhile win over the loaded rows.
+ * Versions read from the file only stand until that load: ids the database no longer has are
+ * forgotten, so coupons created under reused ids are not mistaken for stale writes.
+ */
+@Slf4j
+@Component
+public class CouponIndex {
+
+    private final CouponRepository couponRepository;
+    private final CouponCompiler compiler;
+    private final CouponMetrics metrics;
+    private volatile CatalogSnapshot snapshot = CatalogSnapshot.EMPTY;
+
+    // coupon id -> last applied entity version; guarded by this
+    private final Map<Long, Long> versions = new HashMap<>();
+    private static final long DELETED = Long.MAX_VALUE;
+
+    // evicts coupons at the snapshot's nearest expiry; guarded by this
+    private final ScheduledExecutorService expiryTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "coupon-expiry");
+        t.setDaemon(true);
+        return t;
+    });
+    private ScheduledFuture<?> pendingExpiry;
+    private Instant expiryScheduledFor;
+
+    // null when snapshots are off
+    private final Path snapshotFile;
+    // ids changed while a database load is running, or null; guarded by this
+    private Set<Long> changedDuringLoad;
+    // ids whose version came from the snapshot file and no change since, until the database
+    // load; guarded by this
+    private Set<Long> restoredOnly;
+    // the catalog reflects the database, so it may be written to the snapshot file
+    private volatile boolean loaded;
+    private volatile Thread catchUp;
+    private long writtenVersion = -1;
+
+    public CouponIndex(CouponRepository couponRepository, CouponCompiler compiler, CouponMetrics metrics,
+                       @Value("${monk.snapshot.file:}") String snapshotFile) {
+        this.couponRepository = couponRepository;
+        this.compiler = compiler;
+        this.metrics = metrics;
+        this.snapshotFile = snapshotFile == null || snapshotFile.isBlank() ? null : Path.of(snapshotFile);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (restore()) {
+            catchUp = new Thread(this::catchUp, "catalog-catch-up");
+            catchUp.setDaemon(true);
+            catchUp.start();
+        } else {
+            load();
+            metrics.catalogReady(CouponMetrics.DATABASE, ManagementFactory.getRuntimeMXBean().getUptime());
+        }
+    }
+
+    public void load() {
+        long start = System.nanoTime();
+        synchronized (this) {
+            changedDuringLoad = new HashSet<>();
+        }
+        Instant now = Instant.now();
+        Map<Long, CompiledCoupon> active = new HashMap<>();
+        Map<Long, Long> loadedVersions = new HashMap<>();
+        try {
+            for (Coupon c : couponRepository.findActive(now)) {
+                loadedVersions.put(c.getId(), versionOf(c));
+                try {
+                    active.put(c.getId(), compiler.compile(c));
+                } catch (IllegalArgumentException e) {
+                    log.warn("Skipping coupon {} with invalid payload: {}", c.getId(), e.getMessage());
+                    metrics.compileError(c.getType());
+                }
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                changedDuringLoad = null;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            // a change applied while the rows were read is at least as new as the row
+            for (Long id : changedDuringLoad) {
+                loadedVersions.remove(id);
+                CompiledCoupon current = snapshot.get(id);
+                if (current != null) {
+                    active.put(id, current);
+                } else {
+                    active.remove(id);
+                }
+            }
+            changedDuringLoad = null;
+            // the database may have dropped these rows, or a fresh one may reuse their ids
+            if (restoredOnly != null) {
+                versions.keySet().removeAll(restoredOnly);
+                restoredOnly = null;
+            }
+            versions.putAll(loadedVersions);
+            publish(CatalogSnapshot.of(snapshot.getVersion() + 1, active.values()));
+            loaded = true;
+        }
+        metrics.catalogLoaded(CouponMetrics.DATABASE, System.nanoTime() - start);
+    }
+
+    // serves the snapshot file, if there is a readable one; false means load from the database
+    boolean restore() {
+        if (snapshotFile == null || !Files.exists(snapshotFile)) {
+            return false;
+        }
+        long start = System.nanoTime();
+        SnapshotFile.Contents contents;
+        try {
+            contents = SnapshotFile.read(snapshotFile, compiler);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Ignoring catalog snapshot {}: {}", snapshotFile, e.getMessage());
+            return false;
+        }
+        Instant now = Instant.now();
+        List<CompiledCoupon> live = new ArrayList<>();
+        for (CompiledCoupon c : contents.coupons()) {
+            if (c.getExpiresAt() == null || c.getExpiresAt().isAfter(now)) {
+                live.add(c);
+            }
+        }
+        synchronized (this) {
+            versions.putAll(contents.versions());
+            restoredOnly = new HashSet<>(contents.versions().keySet());
+            publish(CatalogSnapshot.of(contents.catalogVersion(), live));
+        }
+        metrics.catalogLoaded(CouponMetrics.SNAPSHOT, System.nanoTime() - start);
+        metrics.catalogReady(CouponMetrics.SNAPSHOT, ManagementFactory.getRuntimeMXBean().getUptime());
+        log.info("Serving {} coupons from snapshot {} written at {}", live.size(), snapshotFile, contents.writtenAt());
+        return true;
+    }
+
+    // retries until the database answers; the restored catalog is served meanwhile
+    private void catchUp() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                long start = System.nanoTime();
+                load();
+                log.info("Catalog caught up from the database in {} ms", (System.nanoTime() - start) / 1_000_000);
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Catalog load failed, retrying: {}", e.getMessage());
+            }
+            try {
+                Thread.sleep(5_000);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${monk.snapshot.write-interval-ms:30000}",
+            initialDelayString = "${monk.snapshot.write-interval-ms:30000}")
+    public void writeSnapshot() {
+        if (snapshotFile == null || !loaded) {
+            return;
+        }
+        CatalogSnapshot s;
+        Map<Long, Long> known;
+        synchronized (this) {
+            s = snapshot;
+            if (s.getVersion() == writtenVersion) {
+                return;
+            }
+            known = new HashMap<>(versions);
+        }
+        try {
+            SnapshotFile.write(snapshotFile, s.getVersion(), s.getCoupons(), known);
+            synchronized (this) {
+                writtenVersion = s.getVersion();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Could not write catalog snapshot {}: {}", snapshotFile, e.getMessage());
+        }
+    }
+
+    public CatalogSnapshot snapshot() {
+        CatalogSnapshot s = snapshot;
+        Instant nextExpiry = s.getNextExpiry();
+        if (nextExpiry != null && !nextExpiry.isAfter(Instant.now())) {
+            return evictExpired();
+        }
+        return s;
+    }
+
+    public long version() {
+        return snapshot.getVersion();
+    }
+
+    public CompiledCoupon get(Long id) {
+        return snapshot().get(id);
+    }
+
+    // rule must be the compiled payload of the saved coupon
+    // ignored when the index already holds this version or a newer one, e.g. from another node
+    public synchronized void put(Coupon coupon, CouponRule rule) {
+        if (!isNewer(coupon)) {
+            return;
+        }
+        versions.put(coupon.getId(), versionOf(coupon));
+        changed(coupon.getId());
+        CompiledCoupon compiled = isActive(coupon, Instant.now()) ? compiler.compile(coupon, rule) : null;
+        publish(snapshot.with(snapshot.getVersion() + 1, Collections.singletonMap(coupon.getId(), compiled)));
+    }
+
+    // bulk variant of put: one snapshot for the whole list; rules.get(i) belongs to coupons.get(i)
+    public synchronized void putAll(List<Coupon> coupons, List<CouponRule> rules) {
+        Instant now = Instant.now();
+        // null for coupons to drop
+        Map<Long, CompiledCoupon> changes = new HashMap<>();
+        for (int i = 0; i < coupons.size(); i++) {
+            Coupon coupon = coupons.get(i);
+            if (!isNewer(coupon)) {
+                continue;
+            }
+            versions.put(coupon.getId(), versionOf(coupon));
+            changed(coupon.getId());
+            changes.put(coupon.getId(), isActive(coupon, now) ? compiler.compile(coupon, rules.get(i)) : null);
+        }
+        if (!changes.isEmpty()) {
+            publish(snapshot.with(snapshot.getVersion() + 1, changes));
+        }
+    }
+
+    public synchronized void remove(Long id) {
+        versions.put(id, DELETED);
+        changed(id);
+        if (snapshot.get(id) == null) {
+            return;
+        }
+        publish(snapshot.with(snapshot.getVersion() + 1, Collections.singletonMap(id, null)));
+    }
+
+    /**
+     * Applies a coupon written elsewhere. Returns false when the change is not newer than what
+     * this index already holds, or when its payload does not compile.
+     */
+    public synchronized boolean apply(Coupon coupon) {
+        if (!isNewer(coupon)) {
+            return false;
+        }
+        CouponRule rule;
+        try {
+            rule = compiler.compileRule(coupon);
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring change to coupon {} with invalid payload: {}", coupon.getId(), e.getMessage());
+            metrics.compileError(coupon.getType());
+            return false;
+        }
+        put(coupon, rule);
+        return true;
+    }
+
+    public synchronized boolean applyDelete(Long id) {
+        if (Long.valueOf(DELETED).equals(versions.get(id))) {
+            return false;
+        }
+        remove(id);
+        return true;
+    }
+
+    private synchronized CatalogSnapshot evictExpired() {
+        Instant now = Instant.now();
+        CatalogSnapshot s = snapshot;
+        if (s.getNextExpiry() == null || s.getNextExpiry().isAfter(now)) {
+            // the timer fired early; re-arm it for the same instant
+            expiryScheduledFor = null;
+            scheduleExpiry(s.getNextExpiry());
+            return s;
+        }
+        Map<Long, CompiledCoupon> expired = new HashMap<>();
+        for (CompiledCoupon c : s.getCoupons()) {
+            if (c.getExpiresAt() != null && !c.getExpiresAt().isAfter(now)) {
+                expired.put(c.getId(), null);
+            }
+        }
+        return publish(s.with(s.getVersion() + 1, expired));
+    }
+
+    // caller holds the lock; a deleted coupon is never newer
+    private boolean isNewer(Coupon coupon) {
+        Long known = versions.get(coupon.getId());
+        return known == null || versionOf(coupon) > known;
+    }
+
+    // caller holds the lock
+    private void changed(Long id) {
+        if (changedDuringLoad != null) {
+            changedDuringLoad.add(id);
+        }
+        if (restoredOnly != null) {
+            restoredOnly.remove(id);
+        }
+    }
+
+    // caller holds the lock
+    private CatalogSnapshot publish(CatalogSnapshot next) {
+        snapshot = next;
+        scheduleExpiry(next.getNextExpiry());
+        return next;
+    }
+
+    // one pending task, always for the current snapshot's nearest expiry
+    private void scheduleExpiry(Instant at) {
+        if (Objects.equals(at, expiryScheduledFor)) {
+            return;
+        }
+        if (pendingExpiry != null) {
+            pendingExpiry.cancel(false);
+            pendingExpiry = null;
+        }
+        expiryScheduledFor = at;
+        if (at != null) {
+            long delayMs = Math.max(0, Duration.between(Instant.now(), at).toMillis());
+            pendingExpiry = expiryTimer.schedule(this::evictExpired, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        expiryTimer.shutdownNow();
+        Thread t = catchUp;
+        if (t != null) {
+            t.interrupt();
+        }
+        // the next start restores the latest catalog
+        writeSnapshot();
+    }
+
+    private static long versionOf(Coupon c) {
+        return c.getVersion() != null ? c.getVersion() : 0L;
+    }
+
+    static boolean isActive(Coupon c, Instant now) {
+        return Boolean.TRUE.equals(c.getEnabled())
+                && (c.getExpiresAt() == null || c.getExpiresAt().isAfter(now));
+    }
+}
@@ -0,0 +1,276 @@
+package com.manugoswami.monk.index;
+
+import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.rule.BxGyRule;
+import com.manugoswami.monk.rule.CartWiseRule;
+import com.manugoswami.monk.rule.CouponRule;
+import com.manugoswami.monk.rule.ProductWiseRule;
+import com.manugoswami.monk.rule.dsl.DslRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Binary image of the active catalog, read back through a memory-mapped file so a restarting
+ * node can serve evaluations before its database load finishes.
+ *
+ * <pre>
+ * header  int magic "MONK", int format, long catalogVersion, long writtenAt (epoch ms),
+ *         int couponCount, int bodyLength, long crc32(body)
+ * coupon  long id, long entityVersion, str code, str type, long expiresAt seconds, int nanos
+ *         (seconds = Long.MIN_VALUE when none), bool stackable, str stackGroup,
+ *         int maxRedemptions, int maxRedemptionsPerUser, byte ruleKind, rule fields
+ * rule    CART_WISE     long threshold, int bps, long maxDiscount
+ *         PRODUCT_WISE  long[] productIds, int bps, int minQuantity, int maxQuantity
+ *         BXGY          long[] buy, int buyRequired, long[] get, int getQuantity, int repetitionLimit
+ *         PAYLOAD       str payloadJson, compiled again on read (RULE coupons)
+ * str = int byte length (-1 for null) + UTF-8, long[] = int length + values; all big-endian
+ * </pre>
+ *
+ * Rules are stored in their compiled form, so reading needs no JSON parsing for the built-in
+ * types. The mapping only saves copying the file: every record is still decoded into a heap
+ * CompiledCoupon and RULE payloads are compiled again, so a read allocates in proportion to the
+ * catalog. A file with another format, a bad checksum or a truncated body is rejected with
+ * IllegalArgumentException.
+ */
+public final class SnapshotFile {
+
+    private static final int MAGIC = 0x4D4F4E4B;
+    private static final int FORMAT = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4 + 8;
+    private static final long NO_EXPIRY = Long.MIN_VALUE;
+
+    private static final byte CART_WISE = 1;
+    private static final byte PRODUCT_WISE = 2;
+    private static final byte BXGY = 3;
+    private static final byte PAYLOAD = 4;
+
+    private SnapshotFile() {
+    }
+
+    public record Contents(long catalogVersion, Instant writtenAt, List<CompiledCoupon> coupons, Map<Long, Long> versions) {
+    }
+
+    /**
+     * Writes the coupons to a temporary file next to {@code file} and moves it into place, so a
+     * reader never sees a partial snapshot. versions maps coupon id to entity version; absent ids
+     * are written as version 0.
+     */
+    public static void write(Path file, long catalogVersion, Collection<CompiledCoupon> coupons,
+                             Map<Long, Long> versions) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * coupons.size() + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (CompiledCoupon c : coupons) {
+            out.writeLong(c.getId());
+            out.writeLong(versions.getOrDefault(c.getId(), 0L));
+            writeString(out, c.getCode());
+            writeString(out, c.getType());
+            if (c.getExpiresAt() == null) {
+                out.writeLong(NO_EXPIRY);
+                out.writeInt(0);
+            } else {
+                out.writeLong(c.getExpiresAt().getEpochSecond());
+                out.writeInt(c.getExpiresAt().getNano());
+            }
+            out.writeBoolean(c.isStackable());
+            writeString(out, c.getStackGroup());
+            out.writeInt(c.getMaxRedemptions());
+            out.writeInt(c.getMaxRedemptionsPerUser());
+            writeRule(out, c.getRule());
+        }
+        out.flush();
+        byte[] body = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC)
+                .putInt(FORMAT)
+                .putLong(catalogVersion)
+                .putLong(System.currentTimeMillis())
+                .putInt(coupons.size())
+                .putInt(body.length)
+                .putLong(crc.getValue())
+                .flip();
+
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer b = ByteBuffer.wrap(body);
+                while (header.hasRemaining() || b.hasRemaining()) {
+                    ch.write(new ByteBuffer[]{header, b});
+                }
+                ch.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Maps the file and rebuilds its coupons through the compiler, which attaches their
+     * processors. Coupons whose type no longer compiles are skipped.
+     */
+    public static Contents read(Path file, CouponCompiler compiler) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        try {
+            if (buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a catalog snapshot");
+            }
+            int format = buf.getInt();
+            if (format != FORMAT) {
+                throw new IllegalArgumentException("Unsupported snapshot format " + format);
+            }
+            long catalogVersion = buf.getLong();
+            Instant writtenAt = Instant.ofEpochMilli(buf.getLong());
+            int count = buf.getInt();
+            int bodyLength = buf.getInt();
+            long checksum = buf.getLong();
+            if (bodyLength != buf.remaining()) {
+                throw new IllegalArgumentException("Snapshot body is " + buf.remaining() + " bytes, expected " + bodyLength);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buf.duplicate());
+            if (crc.getValue() != checksum) {
+                throw new IllegalArgumentException("Snapshot checksum mismatch");
+            }
+
+            List<CompiledCoupon> coupons = new ArrayList<>(count);
+            Map<Long, Long> versions = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                Coupon c = new Coupon();
+                c.setId(buf.getLong());
+                c.setVersion(buf.getLong());
+                c.setCode(readString(buf));
+                c.setType(readString(buf));
+                long seconds = buf.getLong();
+                int nanos = buf.getInt();
+                c.setExpiresAt(seconds == NO_EXPIRY ? null : Instant.ofEpochSecond(seconds, nanos));
+                c.setStackable(buf.get() != 0);
+                c.setStackGroup(readString(buf));
+                c.setMaxRedemptions(limit(buf.getInt()));
+                c.setMaxRedemptionsPerUser(limit(buf.getInt()));
+                CouponRule rule = readRule(buf, c);
+                versions.put(c.getId(), c.getVersion());
+                try {
+                    coupons.add(compiler.compile(c, rule != null ? rule : compiler.compileRule(c)));
+                } catch (IllegalArgumentException e) {
+                    // a type or payload this build no longer accepts; the database load decides
+                }
+            }
+            if (buf.hasRemaining()) {
+                throw new IllegalArgumentException("Trailing bytes after " + count + " coupons");
+            }
+            return new Contents(catalogVersion, writtenAt, coupons, versions);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated snapshot");
+        }
+    }
+
+    private static void writeRule(DataOutputStream out, CouponRule rule) throws IOException {
+        if (rule instanceof CartWiseRule r) {
+            out.writeByte(CART_WISE);
+            out.writeLong(r.getThresholdCents());
+            out.writeInt(r.getPercentBps());
+            out.writeLong(r.getMaxDiscountCents());
+        } else if (rule instanceof ProductWiseRule r) {
+            out.writeByte(PRODUCT_WISE);
+            writeLongs(out, r.getProductIds());
+            out.writeInt(r.getPercentBps());
+            out.writeInt(r.getMinQuantity());
+            out.writeInt(r.getMaxQuantity());
+        } else if (rule instanceof BxGyRule r) {
+            out.writeByte(BXGY);
+            writeLongs(out, r.getBuyProductIds());
+            out.writeInt(r.getBuyRequiredCount());
+            writeLongs(out, r.getGetProductIds());
+            out.writeInt(r.getGetQuantity());
+            out.writeInt(r.getRepetitionLimit());
+        } else if (rule instanceof DslRule r) {
+            out.writeByte(PAYLOAD);
+            writeString(out, r.payloadJson());
+        } else {
+            throw new IllegalArgumentException("No snapshot form for " + rule.getClass().getSimpleName());
+        }
+    }
+
+    // null for PAYLOAD rules, which the caller compiles from the payload set on the coupon
+    private static CouponRule readRule(ByteBuffer buf, Coupon c) {
+        byte kind = buf.get();
+        return switch (kind) {
+            case CART_WISE -> new CartWiseRule(buf.getLong(), buf.getInt(), buf.getLong());
+            case PRODUCT_WISE -> new ProductWiseRule(readLongs(buf), buf.getInt(), buf.getInt(), buf.getInt());
+            case BXGY -> new BxGyRule(readLongs(buf), buf.getInt(), readLongs(buf), buf.getInt(), buf.getInt());
+            case PAYLOAD -> {
+                c.setPayloadJson(readString(buf));
+                yield null;
+            }
+            default -> throw new IllegalArgumentException("Unknown rule kind " + kind);
+        };
+    }
+
+    // 0 means unlimited in CompiledCoupon and null on the entity
+    private static Integer limit(int value) {
+        return value == 0 ? null : value;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buf.remaining()) {
+            throw new IllegalArgumentException("Truncated snapshot");
+        }
+        byte[] b = new byte[length];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long v : values) {
+            out.writeLong(v);
+        }
+    }
+
+    private static long[] readLongs(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining() / Long.BYTES) {
+            throw new IllegalArgumentException("Truncated snapshot");
+        }
+        long[] values = new long[length];
+        buf.asLongBuffer().get(values);
+        buf.position(buf.position() + length * Long.BYTES);
+        return values;
+    }
+}
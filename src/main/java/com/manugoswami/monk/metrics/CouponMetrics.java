@@ -0,0 +1,118 @@
+package com.manugoswami.monk.metrics;
+
+import io.micrometer.core.instrument.*;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for the coupon engine, exported through /actuator/prometheus.
+ *
+ * monk.coupon.stage{operation,type,stage}        time spent per request in each stage
+ * monk.coupon.evaluated / monk.coupon.matched    coupons run through a processor / yielding a discount
+ * monk.coupon.request.evaluated / .matched       the same counts as per-request distributions
+ * monk.coupon.errors{type,phase}                 evaluation exceptions and payloads failing to compile
+ * monk.coupon.expired.disabled                   expired rows disabled by the expiry sweeper
+ * monk.catalog.load{source}                      time to build the catalog from the database or the snapshot file
+ * monk.catalog.ready{source}                     JVM uptime when the first catalog could serve evaluations
+ */
+@Component
+public class CouponMetrics {
+
+    public static final String FIND = "find_applicable";
+    public static final String APPLY = "apply";
+    public static final String SESSION = "cart_session";
+
+    public static final String CANDIDATE_FETCH = "candidate_fetch";
+    public static final String IS_APPLICABLE = "is_applicable";
+    public static final String CALCULATE_DISCOUNT = "calculate_discount";
+    public static final String DISTRIBUTION = "distribution";
+
+    // candidate fetch happens before coupons are split by type
+    public static final String ALL_TYPES = "all";
+
+    // where a catalog was loaded from
+    public static final String DATABASE = "database";
+    public static final String SNAPSHOT = "snapshot";
+
+    private final MeterRegistry registry;
+    private final Map<List<String>, Timer> stageTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    public CouponMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void stage(String operation, String type, String stage, long nanos) {
+        stageTimers.computeIfAbsent(List.of(operation, type, stage), k ->
+                Timer.builder("monk.coupon.stage")
+                        .description("Time spent in one stage of coupon evaluation, per request")
+                        .tags("operation", operation, "type", type, "stage", stage)
+                        .publishPercentileHistogram()
+                        .register(registry)
+        ).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void evaluation(String operation, EvaluationStats stats) {
+        stats.byType().forEach((type, s) -> {
+            if (s.evaluated > 0) {
+                stage(operation, type, IS_APPLICABLE, s.applicableNanos);
+                counter("monk.coupon.evaluated", "operation", operation, "type", type).increment(s.evaluated);
+            }
+            if (s.discountNanos > 0) {
+                stage(operation, type, CALCULATE_DISCOUNT, s.discountNanos);
+            }
+            if (s.distributionNanos > 0) {
+                stage(operation, type, DISTRIBUTION, s.distributionNanos);
+            }
+            if (s.matched > 0) {
+                counter("monk.coupon.matched", "operation", operation, "type", type).increment(s.matched);
+            }
+            if (s.errors > 0) {
+                counter("monk.coupon.errors", "type", type, "phase", "evaluate").increment(s.errors);
+            }
+        });
+        summary("monk.coupon.request.evaluated", operation).record(stats.evaluated());
+        summary("monk.coupon.request.matched", operation).record(stats.matched());
+    }
+
+    public void compileError(String type) {
+        counter("monk.coupon.errors", "type", String.valueOf(type), "phase", "compile").increment();
+    }
+
+    public void expiredDisabled(int count) {
+        counter("monk.coupon.expired.disabled").increment(count);
+    }
+
+    public void catalogLoaded(String source, long nanos) {
+        Timer.builder("monk.catalog.load")
+                .description("Time to build the active catalog")
+                .tags("source", source)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void catalogReady(String source, long uptimeMillis) {
+        Timer.builder("monk.catalog.ready")
+                .description("JVM uptime when the first catalog could serve evaluations")
+                .tags("source", source)
+                .register(registry)
+                .record(uptimeMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private Counter counter(String name, String... tags) {
+        return counters.computeIfAbsent(name + '|' + String.join("|", tags), k -> Counter.builder(name).tags(tags).register(registry));
+    }
+
+    private DistributionSummary summary(String name, String operation) {
+        return summaries.computeIfAbsent(name + '|' + operation, k ->
+                DistributionSummary.builder(name)
+                        .tags("operation", operation)
+                        .publishPercentileHistogram()
+                        .register(registry));
+    }
+}
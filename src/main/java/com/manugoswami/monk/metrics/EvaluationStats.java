@@ -0,0 +1,62 @@
+package com.manugoswami.monk.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-request accumulator for the evaluation hot path. Stage times and counts are summed
+ * per coupon type and handed to {@link CouponMetrics} once at the end of the request, so
+ * the meter registry is not touched per coupon. Not thread-safe: parallel evaluation keeps
+ * one instance per task and merges them.
+ */
+public final class EvaluationStats {
+
+    private final Map<String, TypeStats> byType = new HashMap<>();
+
+    public TypeStats type(String type) {
+        return byType.computeIfAbsent(type, t -> new TypeStats());
+    }
+
+    public Map<String, TypeStats> byType() {
+        return byType;
+    }
+
+    public int evaluated() {
+        int n = 0;
+        for (TypeStats s : byType.values()) {
+            n += s.evaluated;
+        }
+        return n;
+    }
+
+    public int matched() {
+        int n = 0;
+        for (TypeStats s : byType.values()) {
+            n += s.matched;
+        }
+        return n;
+    }
+
+    public void merge(EvaluationStats other) {
+        other.byType.forEach((type, s) -> type(type).add(s));
+    }
+
+    public static final class TypeStats {
+        public long applicableNanos;
+        public long discountNanos;
+        // apply only: splitting the discount over cart lines, not included in discountNanos
+        public long distributionNanos;
+        public int evaluated;
+        public int matched;
+        public int errors;
+
+        void add(TypeStats o) {
+            applicableNanos += o.applicableNanos;
+            discountNanos += o.discountNanos;
+            distributionNanos += o.distributionNanos;
+            evaluated += o.evaluated;
+            matched += o.matched;
+            errors += o.errors;
+        }
+    }
+}
@@ -7,16 +7,22 @@ import java.time.Instant;
 
 @Entity
 @Data
-@Table(name = "coupons")
+@Table(name = "coupons", indexes = {
+        @Index(name = "idx_coupons_type", columnList = "type"),
+        @Index(name = "idx_coupons_enabled_expires", columnList = "enabled, expiresAt"),
+        @Index(name = "idx_coupons_expires_at", columnList = "expiresAt")
+})
 public class Coupon {
+    // pooled sequence rather than IDENTITY so bulk inserts can be JDBC-batched
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "coupon_seq")
+    @SequenceGenerator(name = "coupon_seq", sequenceName = "coupon_seq", allocationSize = 50)
     private Long id;
 
     @Column(unique = true)
     private String code;
 
-    // "CART_WISE", "PRODUCT_WISE", "BXGY"
+    // "CART_WISE", "PRODUCT_WISE", "BXGY", "RULE"
     private String type;
 
     @Column(columnDefinition = "TEXT")
@@ -28,5 +34,21 @@ public class Coupon {
 
     private Instant expiresAt;
 
+    // may be combined with other stackable coupons by /best-coupons
+    private Boolean stackable = false;
+
+    // at most one coupon per stack group is combined; defaults to the coupon type
+    private String stackGroup;
+
+    // total redemptions allowed across all users; null = unlimited
+    private Integer maxRedemptions;
+
+    // redemptions allowed per user; null = unlimited
+    private Integer maxRedemptionsPerUser;
+
+    // bumped on every update; orders change events across nodes
+    @Version
+    private Long version;
+
 }
 
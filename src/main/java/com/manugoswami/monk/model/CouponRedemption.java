@@ -0,0 +1,35 @@
+package com.manugoswami.monk.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+// One row per successful redemption. Written in batches, hence the pooled sequence instead of IDENTITY.
+@Entity
+@Data
+@NoArgsConstructor
+@Table(name = "coupon_redemptions", indexes = @Index(name = "idx_redemptions_coupon", columnList = "couponId"))
+public class CouponRedemption {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "coupon_redemption_seq")
+    @SequenceGenerator(name = "coupon_redemption_seq", sequenceName = "coupon_redemption_seq", allocationSize = 50)
+    private Long id;
+
+    private Long couponId;
+
+    private String userId;
+
+    private BigDecimal discount;
+
+    private Instant redeemedAt;
+
+    public CouponRedemption(Long couponId, String userId, BigDecimal discount, Instant redeemedAt) {
+        this.couponId = couponId;
+        this.userId = userId;
+        this.discount = discount;
+        this.redeemedAt = redeemedAt;
+    }
+}
@@ -0,0 +1,20 @@
+package com.manugoswami.monk.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Redemption tokens handed out for a coupon, kept apart from coupons so redeeming never locks the coupon row.
+@Entity
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "coupon_usage")
+public class CouponUsage {
+    @Id
+    private Long couponId;
+
+    // tokens reserved by nodes; never exceeds the coupon's maxRedemptions
+    private long reserved;
+}
@@ -0,0 +1,42 @@
+package com.manugoswami.monk.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+// A redemption the ledger could not insert into coupon_redemptions, kept with the error for replay.
+@Entity
+@Data
+@NoArgsConstructor
+@Table(name = "failed_redemptions")
+public class FailedRedemption {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "failed_redemption_seq")
+    @SequenceGenerator(name = "failed_redemption_seq", sequenceName = "failed_redemption_seq", allocationSize = 50)
+    private Long id;
+
+    private Long couponId;
+
+    private String userId;
+
+    private BigDecimal discount;
+
+    private Instant redeemedAt;
+
+    @Column(length = 1000)
+    private String error;
+
+    private Instant failedAt;
+
+    public FailedRedemption(CouponRedemption r, String error, Instant failedAt) {
+        this.couponId = r.getCouponId();
+        this.userId = r.getUserId();
+        this.discount = r.getDiscount();
+        this.redeemedAt = r.getRedeemedAt();
+        this.error = error;
+        this.failedAt = failedAt;
+    }
+}
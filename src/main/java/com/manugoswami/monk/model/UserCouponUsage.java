@@ -0,0 +1,28 @@
+package com.manugoswami.monk.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Entity
+@Data
+@NoArgsConstructor
+@Table(name = "user_coupon_usage",
+        uniqueConstraints = @UniqueConstraint(name = "uk_user_coupon_usage", columnNames = {"couponId", "userId"}))
+public class UserCouponUsage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long couponId;
+
+    private String userId;
+
+    private int used;
+
+    public UserCouponUsage(Long couponId, String userId, int used) {
+        this.couponId = couponId;
+        this.userId = userId;
+        this.used = used;
+    }
+}
@@ -0,0 +1,196 @@
+package com.manugoswami.monk.processor;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.manugoswami.monk.dto.CartDto;
+import com.manugoswami.monk.dto.CartItemDto;
+import com.manugoswami.monk.util.IndexSort;
+import com.manugoswami.monk.util.LongIntHashMap;
+import com.manugoswami.monk.util.Money;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Cart aggregates computed once per request and shared by every processor:
+ * per-line arrays (including optional category tags), the cart total, a productId lookup with summed quantities,
+ * and the lines ordered by unit price (highest first, ties in cart order).
+ *
+ * Request bodies are read straight into these arrays by {@link CartContextDeserializer}.
+ */
+@JsonDeserialize(using = CartContextDeserializer.class)
+public final class CartContext {
+
+    private static final CartContext EMPTY = new CartContext(new long[0], new int[0], new long[0], null);
+    static final String MISSING_FIELDS = "Cart items require productId, quantity and price";
+
+    private final long[] productIds;
+    private final int[] quantities;
+    private final long[] priceCents;
+    // tags per line, null entries for untagged lines; null when no line has tags
+    private final String[][] tags;
+    private final long totalCents;
+
+    // productId -> product slot; slots index the arrays below
+    private final LongIntHashMap slots;
+    private final long[] slotProductIds;
+    private final int[] slotQuantities;
+    private final int[] slotFirstLine;
+    // next line with the same product id, or -1
+    private final int[] nextLine;
+
+    private final int[] linesByPriceDesc;
+
+    private CartContext(long[] productIds, int[] quantities, long[] priceCents, String[][] tags) {
+        int n = productIds.length;
+        this.productIds = productIds;
+        this.quantities = quantities;
+        this.priceCents = priceCents;
+        this.tags = tags;
+
+        long sum = 0;
+        LongIntHashMap slotMap = new LongIntHashMap(n);
+        long[] slotIds = new long[n];
+        int[] slotQty = new int[n];
+        int[] slotFirst = new int[n];
+        int[] slotLast = new int[n];
+        int[] next = new int[n];
+        int slotCount = 0;
+        for (int line = 0; line < n; line++) {
+            sum = Math.addExact(sum, Math.multiplyExact(priceCents[line], (long) quantities[line]));
+            next[line] = -1;
+            int slot = slotMap.get(productIds[line], -1);
+            if (slot < 0) {
+                slot = slotCount++;
+                slotMap.put(productIds[line], slot);
+                slotIds[slot] = productIds[line];
+                slotFirst[slot] = line;
+            } else {
+                next[slotLast[slot]] = line;
+            }
+            slotLast[slot] = line;
+            slotQty[slot] += quantities[line];
+        }
+        this.totalCents = sum;
+        this.slots = slotMap;
+        this.slotProductIds = Arrays.copyOf(slotIds, slotCount);
+        this.slotQuantities = slotQty;
+        this.slotFirstLine = slotFirst;
+        this.nextLine = next;
+
+        // ~price orders highest first without overflowing; equal prices keep cart order
+        long[] keys = new long[n];
+        for (int line = 0; line < n; line++) {
+            keys[line] = ~priceCents[line];
+        }
+        this.linesByPriceDesc = IndexSort.byKey(keys);
+    }
+
+    // throws IllegalArgumentException when an item lacks productId, quantity or price,
+    // has a sub-cent price, or the cart total does not fit in a long
+    public static CartContext of(CartDto cart) {
+        if (cart == null || cart.getItems() == null || cart.getItems().isEmpty()) {
+            return EMPTY;
+        }
+        List<CartItemDto> items = cart.getItems();
+        int n = items.size();
+        long[] productIds = new long[n];
+        int[] quantities = new int[n];
+        long[] priceCents = new long[n];
+        String[][] tags = null;
+        for (int i = 0; i < n; i++) {
+            CartItemDto it = items.get(i);
+            if (it == null || it.getProductId() == null || it.getQuantity() == null || it.getPrice() == null) {
+                throw new IllegalArgumentException(MISSING_FIELDS);
+            }
+            productIds[i] = it.getProductId();
+            quantities[i] = it.getQuantity();
+            priceCents[i] = Money.toCents(it.getPrice(), "price");
+            if (it.getTags() != null && !it.getTags().isEmpty()) {
+                if (tags == null) {
+                    tags = new String[n][];
+                }
+                tags[i] = it.getTags().stream().filter(Objects::nonNull).toArray(String[]::new);
+            }
+        }
+        return of(productIds, quantities, priceCents, tags);
+    }
+
+    // takes ownership of the arrays, which must have the same length; tags may be null
+    static CartContext of(long[] productIds, int[] quantities, long[] priceCents, String[][] tags) {
+        if (productIds.length == 0) {
+            return EMPTY;
+        }
+        try {
+            return new CartContext(productIds, quantities, priceCents, tags);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Cart total is out of range");
+        }
+    }
+
+    public int lineCount() {
+        return productIds.length;
+    }
+
+    public long productId(int line) {
+        return productIds[line];
+    }
+
+    public int quantity(int line) {
+        return quantities[line];
+    }
+
+    public long priceCents(int line) {
+        return priceCents[line];
+    }
+
+    // tags of the line, or null when it has none; callers must not modify
+    public String[] tags(int line) {
+        return tags == null ? null : tags[line];
+    }
+
+    public boolean hasAnyTag(int line, String[] wanted) {
+        String[] own = tags == null ? null : tags[line];
+        if (own == null) {
+            return false;
+        }
+        for (String t : own) {
+            for (String w : wanted) {
+                if (t.equals(w)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    // distinct product ids in order of first appearance
+    public long[] distinctProductIds() {
+        return slotProductIds;
+    }
+
+    // summed quantity over all lines with this product id
+    public int quantityOf(long productId) {
+        int slot = slots.get(productId, -1);
+        return slot < 0 ? 0 : slotQuantities[slot];
+    }
+
+    // first line holding productId, or -1; continue with nextLine
+    public int firstLine(long productId) {
+        int slot = slots.get(productId, -1);
+        return slot < 0 ? -1 : slotFirstLine[slot];
+    }
+
+    public int nextLine(int line) {
+        return nextLine[line];
+    }
+
+    // lines ordered by unit price, highest first; callers must not modify
+    public int[] linesByPriceDesc() {
+        return linesByPriceDesc;
+    }
+}
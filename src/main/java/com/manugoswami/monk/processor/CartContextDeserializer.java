@@ -0,0 +1,181 @@
+package com.manugoswami.monk.processor;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.manugoswami.monk.util.Money;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a cart ({@code {"items": [{"productId", "quantity", "price", "tags"}, ...]}}) token by token
+ * into the primitive arrays behind {@link CartContext}, without building CartDto/CartItemDto
+ * objects. Works with any Jackson format (JSON, Smile, CBOR). Unknown fields are skipped.
+ */
+public class CartContextDeserializer extends StdDeserializer<CartContext> {
+
+    public CartContextDeserializer() {
+        super(CartContext.class);
+    }
+
+    @Override
+    public CartContext deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        try {
+            return read(p);
+        } catch (IllegalArgumentException e) {
+            return (CartContext) ctxt.reportInputMismatch(this, e.getMessage());
+        }
+    }
+
+    @Override
+    public CartContext getNullValue(DeserializationContext ctxt) {
+        return CartContext.of(null);
+    }
+
+    /**
+     * Reads the cart starting at the parser's current token (or the next one when there is
+     * none) and leaves the parser on its last token. Invalid carts are read to the end before
+     * IllegalArgumentException is thrown, so a stream of carts can continue with the next one.
+     */
+    public static CartContext read(JsonParser p) throws IOException {
+        JsonToken t = p.currentToken() != null ? p.currentToken() : p.nextToken();
+        if (t == JsonToken.VALUE_NULL) {
+            return CartContext.of(null);
+        }
+        if (t != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            throw new IllegalArgumentException("Cart must be an object");
+        }
+        Lines lines = new Lines();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if (!"items".equals(field) || value == JsonToken.VALUE_NULL) {
+                p.skipChildren();
+            } else if (value != JsonToken.START_ARRAY) {
+                p.skipChildren();
+                lines.fail("Cart items must be an array");
+            } else {
+                while (p.nextToken() != JsonToken.END_ARRAY) {
+                    readItem(p, lines);
+                }
+            }
+        }
+        if (lines.error != null) {
+            throw new IllegalArgumentException(lines.error);
+        }
+        return CartContext.of(Arrays.copyOf(lines.productIds, lines.size),
+                Arrays.copyOf(lines.quantities, lines.size),
+                Arrays.copyOf(lines.priceCents, lines.size),
+                lines.tags == null ? null : Arrays.copyOf(lines.tags, lines.size));
+    }
+
+    private static void readItem(JsonParser p, Lines lines) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            lines.fail(CartContext.MISSING_FIELDS);
+            return;
+        }
+        Long productId = null;
+        Integer quantity = null;
+        BigDecimal price = null;
+        String[] tags = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            try {
+                switch (field) {
+                    case "productId" -> productId = value == JsonToken.VALUE_NULL ? null : number(p, value).longValueExact();
+                    case "quantity" -> quantity = value == JsonToken.VALUE_NULL ? null : number(p, value).intValueExact();
+                    case "price" -> price = value == JsonToken.VALUE_NULL ? null : number(p, value);
+                    case "tags" -> tags = value == JsonToken.VALUE_NULL ? null : strings(p, value, lines);
+                    default -> p.skipChildren();
+                }
+            } catch (ArithmeticException | NumberFormatException e) {
+                lines.fail("Invalid " + field);
+            }
+        }
+        if (productId == null || quantity == null || price == null) {
+            lines.fail(CartContext.MISSING_FIELDS);
+            return;
+        }
+        try {
+            lines.add(productId, quantity, Money.toCents(price, "price"), tags);
+        } catch (IllegalArgumentException e) {
+            lines.fail(e.getMessage());
+        }
+    }
+
+    // numbers and numeric strings, as Jackson would coerce them into the DTO fields
+    private static BigDecimal number(JsonParser p, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) {
+            return p.getDecimalValue();
+        }
+        if (value == JsonToken.VALUE_STRING) {
+            return new BigDecimal(p.getText().trim());
+        }
+        p.skipChildren();
+        throw new NumberFormatException();
+    }
+
+    private static String[] strings(JsonParser p, JsonToken value, Lines lines) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            p.skipChildren();
+            lines.fail("tags must be an array of strings");
+            return null;
+        }
+        List<String> out = new ArrayList<>();
+        for (JsonToken t = p.nextToken(); t != JsonToken.END_ARRAY; t = p.nextToken()) {
+            if (t == JsonToken.VALUE_STRING) {
+                out.add(p.getText());
+            } else if (t != JsonToken.VALUE_NULL) {
+                p.skipChildren();
+                lines.fail("tags must be an array of strings");
+            }
+        }
+        return out.isEmpty() ? null : out.toArray(new String[0]);
+    }
+
+    // growable line arrays; keeps the first error and reads on
+    private static final class Lines {
+        long[] productIds = new long[16];
+        int[] quantities = new int[16];
+        long[] priceCents = new long[16];
+        // allocated on the first tagged line
+        String[][] tags;
+        int size;
+        String error;
+
+        void add(long productId, int quantity, long cents, String[] lineTags) {
+            if (size == productIds.length) {
+                productIds = Arrays.copyOf(productIds, size * 2);
+                quantities = Arrays.copyOf(quantities, size * 2);
+                priceCents = Arrays.copyOf(priceCents, size * 2);
+                if (tags != null) {
+                    tags = Arrays.copyOf(tags, size * 2);
+                }
+            }
+            productIds[size] = productId;
+            quantities[size] = quantity;
+            priceCents[size] = cents;
+            if (lineTags != null) {
+                if (tags == null) {
+                    tags = new String[productIds.length][];
+                }
+                tags[size] = lineTags;
+            }
+            size++;
+        }
+
+        void fail(String message) {
+            if (error == null) {
+                error = message;
+            }
+        }
+    }
+}
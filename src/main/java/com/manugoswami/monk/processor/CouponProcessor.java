@@ -1,19 +1,35 @@
 package com.manugoswami.monk.processor;
 
-import com.manugoswami.monk.dto.CartDto;
-import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.metrics.EvaluationStats;
+import com.manugoswami.monk.rule.CouponRule;
 
-import java.math.BigDecimal;
+import java.util.BitSet;
 
 public interface CouponProcessor {
 
     String type();
 
-    boolean isApplicable(CartDto cartDto, Coupon coupon);
+    // parses and validates payloadJson; throws IllegalArgumentException for bad payloads
+    CouponRule compile(String payloadJson);
 
-    BigDecimal calculateDiscount(CartDto cart, Coupon coupon);
+    boolean isApplicable(CartContext cart, CouponRule rule);
 
-    BigDecimal applyAndReturnTotalDiscount(CartDto cart, Coupon coupon);
+    // discount in cents
+    long calculateDiscount(CartContext cart, CouponRule rule);
 
+    // discount in cents, also split over the cart lines into lineDiscounts (one zeroed slot per
+    // line); the line discounts add up to the returned total. Time spent on the split once the
+    // total is known is added to stats.distributionNanos.
+    long applyAndReturnTotalDiscount(CartContext cart, CouponRule rule, long[] lineDiscounts,
+                                     EvaluationStats.TypeStats stats);
 
+    default long applyAndReturnTotalDiscount(CartContext cart, CouponRule rule, long[] lineDiscounts) {
+        return applyAndReturnTotalDiscount(cart, rule, lineDiscounts, new EvaluationStats.TypeStats());
+    }
+
+    // cart lines this rule discounts; stacked coupons may not discount the same line.
+    // Order-level discounts (the default) claim no lines.
+    default BitSet discountedLines(CartContext cart, CouponRule rule) {
+        return new BitSet();
+    }
 }
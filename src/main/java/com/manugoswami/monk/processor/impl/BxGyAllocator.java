@@ -0,0 +1,83 @@
+package com.manugoswami.monk.processor.impl;
+
+import com.manugoswami.monk.processor.CartContext;
+import com.manugoswami.monk.rule.BxGyRule;
+
+/**
+ * Chooses which units a BXGY coupon gives away. Each application needs buyRequiredCount paid
+ * units from the buy products and frees up to getQuantity units from the get products; a unit
+ * is either paid or free, never both.
+ *
+ * For a given number of applications k the best free set is greedy over the cart's
+ * price-ordered lines: at most k * getQuantity units in total, and at most as many units of
+ * products in both sets as can be spared after k * buyRequiredCount units are left paid. The
+ * best value is concave in k, so k is found by binary search, and without overlapping products
+ * it is simply the largest k allowed.
+ */
+public final class BxGyAllocator {
+
+    private BxGyAllocator() {
+    }
+
+    /** Discount in cents; when freeQuantities is non-null it receives the free units per cart line. */
+    public static long allocate(CartContext cart, BxGyRule r, int[] freeQuantities) {
+        long buyOnly = 0;
+        long overlap = 0;
+        for (long productId : r.getBuyProductIds()) {
+            if (r.isGetProduct(productId)) {
+                overlap += cart.quantityOf(productId);
+            } else {
+                buyOnly += cart.quantityOf(productId);
+            }
+        }
+        long maxApplications = (buyOnly + overlap) / r.getBuyRequiredCount();
+        if (r.getRepetitionLimit() > 0) {
+            maxApplications = Math.min(maxApplications, r.getRepetitionLimit());
+        }
+        if (maxApplications <= 0) {
+            return 0;
+        }
+
+        long k = maxApplications;
+        if (overlap > 0) {
+            // first k whose next application no longer adds value
+            long lo = 0;
+            long hi = maxApplications;
+            while (lo < hi) {
+                long mid = (lo + hi) >>> 1;
+                if (free(cart, r, mid + 1, buyOnly, overlap, null) > free(cart, r, mid, buyOnly, overlap, null)) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            k = lo;
+        }
+        return free(cart, r, k, buyOnly, overlap, freeQuantities);
+    }
+
+    private static long free(CartContext cart, BxGyRule r, long k, long buyOnly, long overlap, int[] freeQuantities) {
+        long remaining = k * r.getGetQuantity();
+        // overlapping units that may be freed while k applications still have enough paid units
+        long overlapRemaining = overlap - Math.max(0, k * r.getBuyRequiredCount() - buyOnly);
+        long discount = 0;
+        for (int line : cart.linesByPriceDesc()) {
+            if (remaining <= 0) break;
+            long productId = cart.productId(line);
+            if (!r.isGetProduct(productId)) continue;
+            boolean both = r.isBuyProduct(productId);
+            long qty = Math.min(cart.quantity(line), remaining);
+            if (both) {
+                qty = Math.min(qty, overlapRemaining);
+                overlapRemaining -= qty;
+            }
+            if (qty <= 0) continue;
+            discount = Math.addExact(discount, Math.multiplyExact(cart.priceCents(line), qty));
+            remaining -= qty;
+            if (freeQuantities != null) {
+                freeQuantities[line] = (int) qty;
+            }
+        }
+        return discount;
+    }
+}
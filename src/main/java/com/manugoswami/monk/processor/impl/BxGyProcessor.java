@@ -1,18 +1,18 @@
 package com.manugoswami.monk.processor.impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.manugoswami.monk.dto.CartDto;
-import com.manugoswami.monk.dto.CartItemDto;
-import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.metrics.EvaluationStats;
 import com.manugoswami.monk.payload.BxGyPayload;
+import com.manugoswami.monk.processor.CartContext;
 import com.manugoswami.monk.processor.CouponProcessor;
+import com.manugoswami.monk.rule.BxGyRule;
+import com.manugoswami.monk.rule.CouponRule;
+import com.manugoswami.monk.rule.Rules;
+import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.util.Comparator;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.BitSet;
 
+@Component
 public class BxGyProcessor implements CouponProcessor {
 
     private final ObjectMapper om = new ObjectMapper();
@@ -23,61 +23,58 @@ public class BxGyProcessor implements CouponProcessor {
     }
 
     @Override
-    public boolean isApplicable(CartDto cart, Coupon coupon) {
-        try {
-            BxGyPayload p = om.readValue(coupon.getPayloadJson(), BxGyPayload.class);
-            if (p.getBuyProductIds() == null || p.getBuyProductIds().isEmpty()) return false;
-            if (p.getBuyRequiredCount() == null || p.getBuyRequiredCount() <= 0) return false;
-            int totalBuyQty = cart.getItems().stream()
-                    .filter(i -> p.getBuyProductIds().contains(i.getProductId()))
-                    .mapToInt(CartItemDto::getQuantity)
-                    .sum();
-            return totalBuyQty >= p.getBuyRequiredCount();
-        } catch (Exception e) {
-            return false;
-        }
+    public CouponRule compile(String payloadJson) {
+        BxGyPayload p = Rules.parse(om, payloadJson, BxGyPayload.class);
+        return new BxGyRule(
+                Rules.sortedIds(p.getBuyProductIds(), "buyProductIds"),
+                Rules.positive(p.getBuyRequiredCount(), "buyRequiredCount"),
+                Rules.sortedIds(p.getGetProductIds(), "getProductIds"),
+                Rules.positive(p.getGetQuantity(), "getQuantity"),
+                Rules.nonNegative(p.getRepetitionLimit(), 0, "repetitionLimit"));
     }
 
     @Override
-    public BigDecimal calculateDiscount(CartDto cart, Coupon coupon) {
-        try {
-            BxGyPayload p = om.readValue(coupon.getPayloadJson(), BxGyPayload.class);
-            int totalBuyQty = cart.getItems().stream()
-                    .filter(i -> p.getBuyProductIds().contains(i.getProductId()))
-                    .mapToInt(CartItemDto::getQuantity)
-                    .sum();
-
-            int timesApplicable = totalBuyQty / p.getBuyRequiredCount();
-            if (timesApplicable <= 0) return BigDecimal.ZERO;
-            if (p.getRepetitionLimit() != null && p.getRepetitionLimit() > 0) {
-                timesApplicable = Math.min(timesApplicable, p.getRepetitionLimit());
-            }
-
-            int totalFreeAllowed = timesApplicable * (p.getGetQuantity() == null ? 0 : p.getGetQuantity());
-            if (totalFreeAllowed <= 0) return BigDecimal.ZERO;
+    public boolean isApplicable(CartContext cart, CouponRule rule) {
+        BxGyRule r = (BxGyRule) rule;
+        return totalBuyQty(cart, r) >= r.getBuyRequiredCount();
+    }
 
-            // choose eligible get items in cart
-            List<CartItemDto> getEligible = cart.getItems().stream()
-                    .filter(i -> p.getGetProductIds() != null && p.getGetProductIds().contains(i.getProductId()))
-                    .sorted(Comparator.comparing(CartItemDto::getPrice).reversed()) // highest price first
-                    .collect(Collectors.toList());
+    @Override
+    public long calculateDiscount(CartContext cart, CouponRule rule) {
+        return BxGyAllocator.allocate(cart, (BxGyRule) rule, null);
+    }
 
-            int remaining = totalFreeAllowed;
-            BigDecimal totalDiscount = BigDecimal.ZERO;
-            for (CartItemDto it : getEligible) {
-                if (remaining <= 0) break;
-                int freeQty = Math.min(it.getQuantity(), remaining);
-                totalDiscount = totalDiscount.add(it.getPrice().multiply(BigDecimal.valueOf(freeQty)));
-                remaining -= freeQty;
+    @Override
+    public BitSet discountedLines(CartContext cart, CouponRule rule) {
+        int[] free = new int[cart.lineCount()];
+        BxGyAllocator.allocate(cart, (BxGyRule) rule, free);
+        BitSet lines = new BitSet(cart.lineCount());
+        for (int line = 0; line < free.length; line++) {
+            if (free[line] > 0) {
+                lines.set(line);
             }
-            return totalDiscount.setScale(2, RoundingMode.HALF_UP);
-        } catch (Exception e) {
-            return BigDecimal.ZERO;
         }
+        return lines;
     }
 
     @Override
-    public BigDecimal applyAndReturnTotalDiscount(CartDto cart, Coupon coupon) {
-        return calculateDiscount(cart, coupon);
+    public long applyAndReturnTotalDiscount(CartContext cart, CouponRule rule, long[] lineDiscounts,
+                                            EvaluationStats.TypeStats stats) {
+        int[] free = new int[cart.lineCount()];
+        long totalDiscount = BxGyAllocator.allocate(cart, (BxGyRule) rule, free);
+        long split = System.nanoTime();
+        for (int line = 0; line < free.length; line++) {
+            lineDiscounts[line] = cart.priceCents(line) * free[line];
+        }
+        stats.distributionNanos += System.nanoTime() - split;
+        return totalDiscount;
+    }
+
+    private int totalBuyQty(CartContext cart, BxGyRule r) {
+        int qty = 0;
+        for (long productId : r.getBuyProductIds()) {
+            qty += cart.quantityOf(productId);
+        }
+        return qty;
     }
 }
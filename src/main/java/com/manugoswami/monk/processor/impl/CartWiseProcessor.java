@@ -1,15 +1,16 @@
 package com.manugoswami.monk.processor.impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.manugoswami.monk.dto.CartDto;
-import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.metrics.EvaluationStats;
 import com.manugoswami.monk.payload.CartWisePayload;
+import com.manugoswami.monk.processor.CartContext;
 import com.manugoswami.monk.processor.CouponProcessor;
+import com.manugoswami.monk.rule.CartWiseRule;
+import com.manugoswami.monk.rule.CouponRule;
+import com.manugoswami.monk.rule.Rules;
+import com.manugoswami.monk.util.Money;
 import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-
 @Component
 public class CartWiseProcessor implements CouponProcessor {
 
@@ -21,41 +22,44 @@ public class CartWiseProcessor implements CouponProcessor {
     }
 
     @Override
-    public boolean isApplicable(CartDto cart, Coupon coupon) {
-        try {
-            CartWisePayload p = om.readValue(coupon.getPayloadJson(), CartWisePayload.class);
-            BigDecimal total = computeCartTotal(cart);
-            return total.compareTo(p.getThreshold() == null ? BigDecimal.ZERO : p.getThreshold()) >= 0;
-        } catch (Exception e) {
-            return false;
-        }
+    public CouponRule compile(String payloadJson) {
+        CartWisePayload p = Rules.parse(om, payloadJson, CartWisePayload.class);
+        return new CartWiseRule(
+                Rules.cents(p.getThreshold(), 0, "threshold"),
+                Rules.percentBps(p.getDiscountPercent()),
+                Rules.cents(p.getMaxDiscount(), CartWiseRule.UNCAPPED, "maxDiscount"));
     }
 
     @Override
-    public BigDecimal calculateDiscount(CartDto cart, Coupon coupon) {
-        try {
-            CartWisePayload p = om.readValue(coupon.getPayloadJson(), CartWisePayload.class);
-            BigDecimal total = computeCartTotal(cart);
-            BigDecimal percent = p.getDiscountPercent() == null ? BigDecimal.ZERO : p.getDiscountPercent();
-            BigDecimal discount = total.multiply(percent).divide(BigDecimal.valueOf(100), 8, RoundingMode.HALF_UP);
-            if (p.getMaxDiscount() != null) {
-                discount = discount.min(p.getMaxDiscount());
-            }
-            return discount.setScale(2, RoundingMode.HALF_UP);
-        } catch (Exception e) {
-            return BigDecimal.ZERO;
-        }
+    public boolean isApplicable(CartContext cart, CouponRule rule) {
+        CartWiseRule r = (CartWiseRule) rule;
+        return cart.getTotalCents() >= r.getThresholdCents();
     }
 
     @Override
-    public BigDecimal applyAndReturnTotalDiscount(CartDto cart, Coupon coupon) {
-        return calculateDiscount(cart, coupon);
+    public long calculateDiscount(CartContext cart, CouponRule rule) {
+        return ((CartWiseRule) rule).discountFor(cart.getTotalCents());
     }
 
-    private BigDecimal computeCartTotal(CartDto cart) {
-        if (cart == null || cart.getItems() == null) return BigDecimal.ZERO;
-        return cart.getItems().stream()
-                .map(i -> i.getPrice().multiply(BigDecimal.valueOf(i.getQuantity())))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    @Override
+    public long applyAndReturnTotalDiscount(CartContext cart, CouponRule rule, long[] lineDiscounts,
+                                            EvaluationStats.TypeStats stats) {
+        long totalDiscount = calculateDiscount(cart, rule);
+        long totalPrice = cart.getTotalCents();
+        if (totalPrice == 0) {
+            return totalDiscount;
+        }
+        long split = System.nanoTime();
+        // in proportion to each line's value; the last line takes the rounding
+        long distributed = 0;
+        for (int line = 0; line < cart.lineCount(); line++) {
+            long share = line == cart.lineCount() - 1
+                    ? totalDiscount - distributed
+                    : Money.proportionalShare(cart.priceCents(line) * cart.quantity(line), totalDiscount, totalPrice);
+            distributed += share;
+            lineDiscounts[line] = share;
+        }
+        stats.distributionNanos += System.nanoTime() - split;
+        return totalDiscount;
     }
 }
@@ -1,15 +1,20 @@
 package com.manugoswami.monk.processor.impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.manugoswami.monk.dto.CartDto;
-import com.manugoswami.monk.dto.CartItemDto;
-import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.metrics.EvaluationStats;
 import com.manugoswami.monk.payload.ProductWisePayload;
+import com.manugoswami.monk.processor.CartContext;
 import com.manugoswami.monk.processor.CouponProcessor;
+import com.manugoswami.monk.rule.CouponRule;
+import com.manugoswami.monk.rule.ProductWiseRule;
+import com.manugoswami.monk.rule.Rules;
+import com.manugoswami.monk.util.IndexSort;
+import com.manugoswami.monk.util.Money;
+import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.util.BitSet;
 
+@Component
 public class ProductWiseProcessor implements CouponProcessor {
     private final ObjectMapper om = new ObjectMapper();
 
@@ -19,50 +24,97 @@ public class ProductWiseProcessor implements CouponProcessor {
     }
 
     @Override
-    public boolean isApplicable(CartDto cart, Coupon coupon) {
-        try {
-            ProductWisePayload p = om.readValue(coupon.getPayloadJson(), ProductWisePayload.class);
-            if (p.getProductIds() == null || p.getProductIds().isEmpty()) return false;
-            for (CartItemDto it : cart.getItems()) {
-                if (p.getProductIds().contains(it.getProductId())) {
-                    if (p.getMinQuantity() == null || it.getQuantity() >= p.getMinQuantity()) {
-                        return true;
-                    }
-                }
+    public CouponRule compile(String payloadJson) {
+        ProductWisePayload p = Rules.parse(om, payloadJson, ProductWisePayload.class);
+        int min = Rules.nonNegative(p.getMinQuantity(), 0, "minQuantity");
+        int max = Rules.nonNegative(p.getMaxQuantity(), Integer.MAX_VALUE, "maxQuantity");
+        if (min > max) {
+            throw new IllegalArgumentException("minQuantity must not exceed maxQuantity");
+        }
+        return new ProductWiseRule(
+                Rules.sortedIds(p.getProductIds(), "productIds"),
+                Rules.percentBps(p.getDiscountPercent()),
+                min,
+                max);
+    }
+
+    @Override
+    public boolean isApplicable(CartContext cart, CouponRule rule) {
+        ProductWiseRule r = (ProductWiseRule) rule;
+        for (int line = 0; line < cart.lineCount(); line++) {
+            if (r.covers(cart.productId(line)) && cart.quantity(line) >= r.getMinQuantity()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long calculateDiscount(CartContext cart, CouponRule rule) {
+        ProductWiseRule r = (ProductWiseRule) rule;
+        // sum of price * qty * bps, rounded once like the old sum of unrounded item discounts
+        long total = 0;
+        for (int line = 0; line < cart.lineCount(); line++) {
+            if (r.covers(cart.productId(line))) {
+                int eligibleQty = cart.quantity(line);
+                if (eligibleQty < r.getMinQuantity()) continue;
+                eligibleQty = Math.min(eligibleQty, r.getMaxQuantity());
+                long itemTotal = Math.multiplyExact(cart.priceCents(line), (long) eligibleQty);
+                total = Math.addExact(total, Math.multiplyExact(itemTotal, (long) r.getPercentBps()));
             }
-            return false;
-        } catch (Exception e) {
-            return false;
         }
+        return Money.divideHalfUp(total, Money.BPS_SCALE);
     }
 
     @Override
-    public BigDecimal calculateDiscount(CartDto cart, Coupon coupon) {
-        try {
-            ProductWisePayload p = om.readValue(coupon.getPayloadJson(), ProductWisePayload.class);
-            if (p.getProductIds() == null || p.getProductIds().isEmpty()) return BigDecimal.ZERO;
-            BigDecimal total = BigDecimal.ZERO;
-            for (CartItemDto it : cart.getItems()) {
-                if (p.getProductIds().contains(it.getProductId())) {
-                    int eligibleQty = it.getQuantity();
-                    if (p.getMinQuantity() != null && eligibleQty < p.getMinQuantity()) continue;
-                    if (p.getMaxQuantity() != null) {
-                        eligibleQty = Math.min(eligibleQty, p.getMaxQuantity());
-                    }
-                    BigDecimal itemDiscount = it.getPrice()
-                            .multiply(BigDecimal.valueOf(eligibleQty))
-                            .multiply(p.getDiscountPercent().divide(BigDecimal.valueOf(100)));
-                    total = total.add(itemDiscount);
-                }
+    public BitSet discountedLines(CartContext cart, CouponRule rule) {
+        ProductWiseRule r = (ProductWiseRule) rule;
+        BitSet lines = new BitSet(cart.lineCount());
+        for (int line = 0; line < cart.lineCount(); line++) {
+            if (r.covers(cart.productId(line)) && cart.quantity(line) >= r.getMinQuantity()) {
+                lines.set(line);
             }
-            return total.setScale(2, RoundingMode.HALF_UP);
-        } catch (Exception e) {
-            return BigDecimal.ZERO;
         }
+        return lines;
     }
 
     @Override
-    public BigDecimal applyAndReturnTotalDiscount(CartDto cart, Coupon coupon) {
-        return calculateDiscount(cart, coupon);
+    public long applyAndReturnTotalDiscount(CartContext cart, CouponRule rule, long[] lineDiscounts,
+                                            EvaluationStats.TypeStats stats) {
+        ProductWiseRule r = (ProductWiseRule) rule;
+        // line discounts are rounded down and the cents left over from rounding the total once
+        // (as calculateDiscount does) go to the lines with the largest remainders
+        long total = 0;
+        long applied = 0;
+        long[] remainders = new long[cart.lineCount()];
+        for (int line = 0; line < cart.lineCount(); line++) {
+            if (r.covers(cart.productId(line))) {
+                int eligibleQty = cart.quantity(line);
+                if (eligibleQty < r.getMinQuantity()) continue;
+                eligibleQty = Math.min(eligibleQty, r.getMaxQuantity());
+                long itemTotal = Math.multiplyExact(cart.priceCents(line), (long) eligibleQty);
+                long itemDiscount = Math.multiplyExact(itemTotal, (long) r.getPercentBps());
+                total = Math.addExact(total, itemDiscount);
+                lineDiscounts[line] = itemDiscount / Money.BPS_SCALE;
+                remainders[line] = itemDiscount % Money.BPS_SCALE;
+                applied += lineDiscounts[line];
+            }
+        }
+        long totalDiscount = Money.divideHalfUp(total, Money.BPS_SCALE);
+        long split = System.nanoTime();
+        // fewer than one cent per line with a remainder; ties go to the earlier line
+        int left = (int) (totalDiscount - applied);
+        if (left > 0) {
+            long[] keys = new long[remainders.length];
+            for (int line = 0; line < keys.length; line++) {
+                keys[line] = -remainders[line];
+            }
+            int[] byRemainderDesc = IndexSort.byKey(keys);
+            for (int i = 0; i < left; i++) {
+                lineDiscounts[byRemainderDesc[i]]++;
+            }
+        }
+        stats.distributionNanos += System.nanoTime() - split;
+        return totalDiscount;
     }
 }
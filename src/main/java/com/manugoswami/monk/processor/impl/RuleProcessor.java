@@ -0,0 +1,52 @@
+package com.manugoswami.monk.processor.impl;
+
+import com.manugoswami.monk.metrics.EvaluationStats;
+import com.manugoswami.monk.processor.CartContext;
+import com.manugoswami.monk.processor.CouponProcessor;
+import com.manugoswami.monk.rule.CouponRule;
+import com.manugoswami.monk.rule.dsl.DslCompiler;
+import com.manugoswami.monk.rule.dsl.DslRule;
+import org.springframework.stereotype.Component;
+
+import java.util.BitSet;
+
+// Coupons written in the rule DSL; see DslCompiler for the payload grammar.
+@Component
+public class RuleProcessor implements CouponProcessor {
+
+    @Override
+    public String type() {
+        return "RULE";
+    }
+
+    @Override
+    public CouponRule compile(String payloadJson) {
+        return DslCompiler.compile(payloadJson);
+    }
+
+    @Override
+    public boolean isApplicable(CartContext cart, CouponRule rule) {
+        return ((DslRule) rule).matches(cart);
+    }
+
+    @Override
+    public long calculateDiscount(CartContext cart, CouponRule rule) {
+        return ((DslRule) rule).discount(cart);
+    }
+
+    @Override
+    public long applyAndReturnTotalDiscount(CartContext cart, CouponRule rule, long[] lineDiscounts,
+                                            EvaluationStats.TypeStats stats) {
+        DslRule r = (DslRule) rule;
+        long totalDiscount = r.discount(cart);
+        long split = System.nanoTime();
+        r.distribute(cart, totalDiscount, lineDiscounts);
+        stats.distributionNanos += System.nanoTime() - split;
+        return totalDiscount;
+    }
+
+    @Override
+    public BitSet discountedLines(CartContext cart, CouponRule rule) {
+        return ((DslRule) rule).targetLines(cart);
+    }
+}
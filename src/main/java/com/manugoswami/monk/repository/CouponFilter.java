@@ -0,0 +1,15 @@
+package com.manugoswami.monk.repository;
+
+import lombok.Data;
+
+import java.time.Instant;
+
+// Optional listing filters; null fields are not applied. Bound from query parameters.
+@Data
+public class CouponFilter {
+    private String type;
+    private Boolean enabled;
+    private Instant expiresAfter;  // inclusive
+    private Instant expiresBefore; // exclusive
+    private String codePrefix;
+}
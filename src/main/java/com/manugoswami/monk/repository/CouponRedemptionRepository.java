@@ -0,0 +1,10 @@
+package com.manugoswami.monk.repository;
+
+import com.manugoswami.monk.model.CouponRedemption;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CouponRedemptionRepository extends JpaRepository<CouponRedemption, Long> {
+    long countByCouponId(Long couponId);
+}
@@ -1,13 +1,44 @@
 package com.manugoswami.monk.repository;
 
 import com.manugoswami.monk.model.Coupon;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.List;
 
 @Repository
-public interface CouponRepository extends JpaRepository<Coupon, Long> {
-    List<Coupon> findByEnabledTrueAndExpiresAtAfter(Instant now);
+public interface CouponRepository extends JpaRepository<Coupon, Long>, CouponRepositoryCustom {
+    // served by idx_coupons_enabled_expires; coupons without an expiry never expire
+    @Transactional(readOnly = true)
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select c from Coupon c where c.enabled = true and (c.expiresAt is null or c.expiresAt > :now)")
+    List<Coupon> findActive(@Param("now") Instant now);
+
+    // enabled rows whose expiry has passed, oldest id first; one sweep batch at a time
+    @Transactional(readOnly = true)
+    @Query("select c.id from Coupon c where c.enabled = true and c.expiresAt <= :now order by c.id")
+    List<Long> findExpiredEnabledIds(@Param("now") Instant now, Pageable page);
+
+    // bumps the version so sync listeners and optimistic writers see the change; re-checks the
+    // expiry so a coupon extended since findExpiredEnabledIds stays enabled
+    @Modifying
+    @Transactional
+    @Query("update Coupon c set c.enabled = false, c.version = coalesce(c.version, 0) + 1 " +
+            "where c.id in :ids and c.enabled = true and c.expiresAt <= :now")
+    int disableAll(@Param("ids") List<Long> ids, @Param("now") Instant now);
+
+    // keyset page for streaming export: the next coupons after the given id
+    List<Coupon> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable page);
 }
@@ -0,0 +1,15 @@
+package com.manugoswami.monk.repository;
+
+import com.manugoswami.monk.dto.CouponSummaryDto;
+import com.manugoswami.monk.model.Coupon;
+
+import java.util.List;
+
+public interface CouponRepositoryCustom {
+
+    // up to limit coupons with id > afterId (all when afterId is null) matching the filter, in id order
+    List<Coupon> findPage(CouponFilter filter, Long afterId, int limit);
+
+    // same page as findPage, without loading payloadJson
+    List<CouponSummaryDto> findSummaryPage(CouponFilter filter, Long afterId, int limit);
+}
@@ -0,0 +1,73 @@
+package com.manugoswami.monk.repository;
+
+import com.manugoswami.monk.dto.CouponSummaryDto;
+import com.manugoswami.monk.model.Coupon;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Keyset listing queries. Seeking on id keeps every page an index range scan, however deep.
+class CouponRepositoryImpl implements CouponRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Override
+    public List<Coupon> findPage(CouponFilter filter, Long afterId, int limit) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Coupon> q = cb.createQuery(Coupon.class);
+        Root<Coupon> c = q.from(Coupon.class);
+        q.select(c).where(predicates(cb, c, filter, afterId)).orderBy(cb.asc(c.get("id")));
+        return em.createQuery(q).setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public List<CouponSummaryDto> findSummaryPage(CouponFilter filter, Long afterId, int limit) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<CouponSummaryDto> q = cb.createQuery(CouponSummaryDto.class);
+        Root<Coupon> c = q.from(Coupon.class);
+        q.select(cb.construct(CouponSummaryDto.class,
+                        c.get("id"),
+                        c.get("code"),
+                        c.get("type"),
+                        c.get("enabled"),
+                        c.get("expiresAt"),
+                        c.get("stackable"),
+                        c.get("stackGroup"),
+                        c.get("maxRedemptions"),
+                        c.get("maxRedemptionsPerUser")))
+                .where(predicates(cb, c, filter, afterId))
+                .orderBy(cb.asc(c.get("id")));
+        return em.createQuery(q).setMaxResults(limit).getResultList();
+    }
+
+    private static Predicate[] predicates(CriteriaBuilder cb, Root<Coupon> c, CouponFilter f, Long afterId) {
+        List<Predicate> p = new ArrayList<>();
+        if (afterId != null) {
+            p.add(cb.greaterThan(c.get("id"), afterId));
+        }
+        if (f.getType() != null) {
+            p.add(cb.equal(c.get("type"), f.getType()));
+        }
+        if (f.getEnabled() != null) {
+            p.add(cb.equal(c.get("enabled"), f.getEnabled()));
+        }
+        if (f.getExpiresAfter() != null) {
+            p.add(cb.greaterThanOrEqualTo(c.get("expiresAt"), f.getExpiresAfter()));
+        }
+        if (f.getExpiresBefore() != null) {
+            p.add(cb.lessThan(c.get("expiresAt"), f.getExpiresBefore()));
+        }
+        if (f.getCodePrefix() != null && !f.getCodePrefix().isEmpty()) {
+            p.add(cb.like(c.get("code"), escapeLike(f.getCodePrefix()) + "%", '\\'));
+        }
+        return p.toArray(new Predicate[0]);
+    }
+
+    private static String escapeLike(String s) {
+        return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
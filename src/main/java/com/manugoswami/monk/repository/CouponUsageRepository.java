@@ -0,0 +1,31 @@
+package com.manugoswami.monk.repository;
+
+import com.manugoswami.monk.model.CouponUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface CouponUsageRepository extends JpaRepository<CouponUsage, Long> {
+
+    // never overwrites an existing row, whose reservations other nodes may already be using
+    @Modifying
+    @Transactional
+    @Query(value = "insert into coupon_usage (coupon_id, reserved) select :id, 0 " +
+            "where not exists (select 1 from coupon_usage where coupon_id = :id)", nativeQuery = true)
+    int insertIfAbsent(@Param("id") Long couponId);
+
+    // reserves n tokens only if that stays within the limit; returns the number of rows updated (0 or 1)
+    @Modifying
+    @Transactional
+    @Query("update CouponUsage u set u.reserved = u.reserved + :n where u.couponId = :id and u.reserved + :n <= :limit")
+    int reserve(@Param("id") Long couponId, @Param("n") long n, @Param("limit") long limit);
+
+    @Modifying
+    @Transactional
+    @Query("update CouponUsage u set u.reserved = u.reserved - :n where u.couponId = :id and u.reserved >= :n")
+    int release(@Param("id") Long couponId, @Param("n") long n);
+}
@@ -0,0 +1,9 @@
+package com.manugoswami.monk.repository;
+
+import com.manugoswami.monk.model.FailedRedemption;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface FailedRedemptionRepository extends JpaRepository<FailedRedemption, Long> {
+}
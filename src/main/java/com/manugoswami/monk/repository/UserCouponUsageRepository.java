@@ -0,0 +1,27 @@
+package com.manugoswami.monk.repository;
+
+import com.manugoswami.monk.model.UserCouponUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface UserCouponUsageRepository extends JpaRepository<UserCouponUsage, Long> {
+
+    boolean existsByCouponIdAndUserId(Long couponId, String userId);
+
+    @Modifying
+    @Transactional
+    @Query("update UserCouponUsage u set u.used = u.used + 1 " +
+            "where u.couponId = :couponId and u.userId = :userId and u.used < :limit")
+    int increment(@Param("couponId") Long couponId, @Param("userId") String userId, @Param("limit") int limit);
+
+    @Modifying
+    @Transactional
+    @Query("update UserCouponUsage u set u.used = u.used - 1 " +
+            "where u.couponId = :couponId and u.userId = :userId and u.used > 0")
+    int decrement(@Param("couponId") Long couponId, @Param("userId") String userId);
+}
@@ -0,0 +1,34 @@
+package com.manugoswami.monk.rule;
+
+import lombok.Value;
+
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+@Value
+public class BxGyRule implements CouponRule {
+    long[] buyProductIds; // sorted, distinct
+    int buyRequiredCount;
+    long[] getProductIds; // sorted, distinct
+    int getQuantity;
+    int repetitionLimit; // 0 when unlimited
+
+    @Override
+    public long[] requiredProductIds() {
+        return buyProductIds;
+    }
+
+    // free units come from the get products, so they matter as much as the buy products
+    @Override
+    public long[] affectedProductIds() {
+        return LongStream.concat(Arrays.stream(buyProductIds), Arrays.stream(getProductIds)).sorted().distinct().toArray();
+    }
+
+    public boolean isBuyProduct(long productId) {
+        return Arrays.binarySearch(buyProductIds, productId) >= 0;
+    }
+
+    public boolean isGetProduct(long productId) {
+        return Arrays.binarySearch(getProductIds, productId) >= 0;
+    }
+}
@@ -0,0 +1,21 @@
+package com.manugoswami.monk.rule;
+
+import com.manugoswami.monk.util.Money;
+import lombok.Value;
+
+@Value
+public class CartWiseRule implements CouponRule {
+    public static final long UNCAPPED = Long.MAX_VALUE;
+
+    long thresholdCents;
+    int percentBps;
+    long maxDiscountCents; // UNCAPPED when absent
+
+    public long discountFor(long cartTotalCents) {
+        return Math.min(Money.percentOf(cartTotalCents, percentBps), maxDiscountCents);
+    }
+
+    public boolean isCapped() {
+        return maxDiscountCents != UNCAPPED;
+    }
+}
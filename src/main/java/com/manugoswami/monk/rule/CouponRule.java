@@ -0,0 +1,27 @@
+package com.manugoswami.monk.rule;
+
+/**
+ * Immutable, pre-validated form of a coupon's payloadJson. Built once by
+ * {@link com.manugoswami.monk.processor.CouponProcessor#compile(String)} when the
+ * coupon is saved or loaded, and evaluated by the same processor afterwards.
+ */
+public interface CouponRule {
+
+    /**
+     * Product ids of which the cart must contain at least one for the rule to
+     * possibly apply, or null when the rule has no such requirement. Used by the
+     * coupon index to skip rules that cannot match a cart.
+     */
+    default long[] requiredProductIds() {
+        return null;
+    }
+
+    /**
+     * Product ids whose cart lines can change this rule's result, or null when the result
+     * may depend on any line. Must contain every required product id. Cart sessions use it
+     * to re-evaluate only the rules touched by a change.
+     */
+    default long[] affectedProductIds() {
+        return requiredProductIds();
+    }
+}
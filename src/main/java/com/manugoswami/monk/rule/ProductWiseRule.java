@@ -0,0 +1,22 @@
+package com.manugoswami.monk.rule;
+
+import lombok.Value;
+
+import java.util.Arrays;
+
+@Value
+public class ProductWiseRule implements CouponRule {
+    long[] productIds; // sorted, distinct
+    int percentBps;
+    int minQuantity; // 0 when unset
+    int maxQuantity; // Integer.MAX_VALUE when unset
+
+    @Override
+    public long[] requiredProductIds() {
+        return productIds;
+    }
+
+    public boolean covers(long productId) {
+        return Arrays.binarySearch(productIds, productId) >= 0;
+    }
+}
@@ -0,0 +1,83 @@
+package com.manugoswami.monk.rule;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.manugoswami.monk.util.Money;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+// Validation helpers shared by the processors' compile step.
+public final class Rules {
+
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+
+    private Rules() {
+    }
+
+    public static <T> T parse(ObjectMapper om, String payloadJson, Class<T> type) {
+        if (payloadJson == null || payloadJson.isBlank()) {
+            throw new IllegalArgumentException("payloadJson is required");
+        }
+        try {
+            return om.readValue(payloadJson, type);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid payloadJson: " + e.getOriginalMessage());
+        }
+    }
+
+    public static long[] sortedIds(List<Long> ids, String field) {
+        if (ids == null || ids.isEmpty()) {
+            throw new IllegalArgumentException(field + " must not be empty");
+        }
+        long[] out = new long[ids.size()];
+        for (int i = 0; i < out.length; i++) {
+            Long id = ids.get(i);
+            if (id == null) {
+                throw new IllegalArgumentException(field + " must not contain null");
+            }
+            out[i] = id;
+        }
+        Arrays.sort(out);
+        return Arrays.stream(out).distinct().toArray();
+    }
+
+    public static int percentBps(BigDecimal percent) {
+        if (percent == null) {
+            throw new IllegalArgumentException("discountPercent is required");
+        }
+        if (percent.signum() < 0 || percent.compareTo(HUNDRED) > 0) {
+            throw new IllegalArgumentException("discountPercent must be between 0 and 100");
+        }
+        return Money.toBasisPoints(percent, "discountPercent");
+    }
+
+    // non-negative amount in cents, or fallback when absent
+    public static long cents(BigDecimal value, long fallback, String field) {
+        if (value == null) {
+            return fallback;
+        }
+        if (value.signum() < 0) {
+            throw new IllegalArgumentException(field + " must not be negative");
+        }
+        return Money.toCents(value, field);
+    }
+
+    public static int positive(Integer value, String field) {
+        if (value == null || value <= 0) {
+            throw new IllegalArgumentException(field + " must be a positive integer");
+        }
+        return value;
+    }
+
+    public static int nonNegative(Integer value, int fallback, String field) {
+        if (value == null) {
+            return fallback;
+        }
+        if (value < 0) {
+            throw new IllegalArgumentException(field + " must not be negative");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,365 @@
+package com.manugoswami.monk.rule.dsl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.manugoswami.monk.processor.CartContext;
+import com.manugoswami.monk.rule.CartWiseRule;
+import com.manugoswami.monk.rule.Rules;
+import com.manugoswami.monk.util.Money;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Compiles the payloadJson of a RULE coupon into a {@link DslRule}.
+ *
+ * <pre>
+ * { "when": condition,                      optional, the rule always applies without it
+ *   "then": action }
+ *
+ * condition, an object with exactly one key:
+ *   "all": [condition, ...]    "any": [condition, ...]    "not": condition
+ *   "cartTotal": {"min": amount, "max": amount}
+ *   "quantity":  {"of": selector, "min": count, "max": count}    summed over the selected lines
+ *   "subtotal":  {"of": selector, "min": amount, "max": amount}  price x quantity of the selected lines
+ *   (min and max are inclusive and both optional)
+ *
+ * selector, the lines holding any of the products or carrying any of the tags; every line when absent:
+ *   {"products": [id, ...], "tags": ["tag", ...]}
+ *
+ * action, a discount on the subtotal of the selected lines:
+ *   {"percentOff": percent, "of": selector, "maxDiscount": amount}
+ *   {"amountOff": amount, "of": selector}          at most the subtotal
+ * </pre>
+ *
+ * Unknown keys are rejected so that typos do not silently widen a promotion. Throws
+ * IllegalArgumentException for invalid payloads.
+ */
+public final class DslCompiler {
+
+    private static final ObjectMapper OM = new ObjectMapper().enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+
+    private DslCompiler() {
+    }
+
+    // lines selected by a selector; products and tags are null when not given, both null means every line
+    private record Selector(DslRule.LineFilter filter, long[] products, String[] tags) {
+        boolean productsOnly() {
+            return products != null && tags == null;
+        }
+    }
+
+    private record Compiled(DslRule.Condition condition, long[] required) {
+    }
+
+    // products referenced anywhere, and whether the rule can depend on lines outside them
+    private static final class Scope {
+        final SortedSet<Long> products = new TreeSet<>();
+        boolean global;
+    }
+
+    public static DslRule compile(String payloadJson) {
+        if (payloadJson == null || payloadJson.isBlank()) {
+            throw new IllegalArgumentException("payloadJson is required");
+        }
+        JsonNode root;
+        try {
+            root = OM.readTree(payloadJson);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid payloadJson: " + e.getOriginalMessage());
+        }
+        object(root, "payloadJson", Set.of("when", "then"));
+
+        Scope scope = new Scope();
+        Compiled when = root.has("when") ? condition(root.get("when"), scope) : new Compiled(cart -> true, null);
+
+        JsonNode then = root.get("then");
+        if (then == null) {
+            throw new IllegalArgumentException("then is required");
+        }
+        object(then, "then", Set.of("percentOff", "amountOff", "of", "maxDiscount"));
+        Selector target = selector(then.get("of"), scope);
+        DslRule.Measure subtotal = subtotalOf(target);
+        DslRule.Measure discount;
+        if (then.has("percentOff") == then.has("amountOff")) {
+            throw new IllegalArgumentException("then needs exactly one of percentOff and amountOff");
+        }
+        if (then.has("percentOff")) {
+            int bps = percentBps(then.get("percentOff"));
+            long cap = then.has("maxDiscount") ? amount(then.get("maxDiscount"), "maxDiscount") : CartWiseRule.UNCAPPED;
+            discount = cart -> Math.min(Money.percentOf(subtotal.of(cart), bps), cap);
+        } else {
+            if (then.has("maxDiscount")) {
+                throw new IllegalArgumentException("maxDiscount only applies to percentOff");
+            }
+            long off = amount(then.get("amountOff"), "amountOff");
+            discount = cart -> Math.min(off, subtotal.of(cart));
+        }
+
+        // a discount needs at least one targeted line
+        long[] required = narrowest(when.required(), target.productsOnly() ? target.products() : null);
+        long[] affected = scope.global ? null : scope.products.stream().mapToLong(Long::longValue).toArray();
+        return new DslRule(when.condition(), target.filter(), subtotal, discount, required, affected, payloadJson);
+    }
+
+    private static Compiled condition(JsonNode node, Scope scope) {
+        if (node == null || !node.isObject() || node.size() != 1) {
+            throw new IllegalArgumentException("A condition must be an object with exactly one key");
+        }
+        String kind = node.fieldNames().next();
+        JsonNode value = node.get(kind);
+        switch (kind) {
+            case "all", "any" -> {
+                if (!value.isArray() || value.isEmpty()) {
+                    throw new IllegalArgumentException(kind + " must be a non-empty array of conditions");
+                }
+                List<Compiled> parts = new ArrayList<>();
+                for (JsonNode child : value) {
+                    parts.add(condition(child, scope));
+                }
+                DslRule.Condition[] tests = parts.stream().map(Compiled::condition).toArray(DslRule.Condition[]::new);
+                if (kind.equals("all")) {
+                    long[] required = null;
+                    for (Compiled part : parts) {
+                        required = narrowest(required, part.required());
+                    }
+                    return new Compiled(all(tests), required);
+                }
+                // any: a product is required only if every branch requires one
+                SortedSet<Long> union = new TreeSet<>();
+                for (Compiled part : parts) {
+                    if (part.required() == null) {
+                        union = null;
+                        break;
+                    }
+                    Arrays.stream(part.required()).forEach(union::add);
+                }
+                return new Compiled(any(tests), union == null ? null : union.stream().mapToLong(Long::longValue).toArray());
+            }
+            case "not" -> {
+                DslRule.Condition inner = condition(value, scope).condition();
+                return new Compiled(cart -> !inner.test(cart), null);
+            }
+            case "cartTotal" -> {
+                object(value, kind, Set.of("min", "max"));
+                scope.global = true;
+                long min = value.has("min") ? amount(value.get("min"), "cartTotal.min") : 0;
+                long max = value.has("max") ? amount(value.get("max"), "cartTotal.max") : Long.MAX_VALUE;
+                checkRange(min, max, kind);
+                return new Compiled(cart -> {
+                    long total = cart.getTotalCents();
+                    return total >= min && total <= max;
+                }, null);
+            }
+            case "quantity", "subtotal" -> {
+                object(value, kind, Set.of("of", "min", "max"));
+                Selector selector = selector(value.get("of"), scope);
+                boolean money = kind.equals("subtotal");
+                long min = value.has("min") ? (money ? amount(value.get("min"), kind + ".min") : count(value.get("min"), kind + ".min")) : 0;
+                long max = value.has("max") ? (money ? amount(value.get("max"), kind + ".max") : count(value.get("max"), kind + ".max")) : Long.MAX_VALUE;
+                checkRange(min, max, kind);
+                DslRule.Measure measure = money ? subtotalOf(selector) : quantityOf(selector);
+                // a positive minimum needs at least one selected line
+                long[] required = min > 0 && selector.productsOnly() ? selector.products() : null;
+                return new Compiled(cart -> {
+                    long v = measure.of(cart);
+                    return v >= min && v <= max;
+                }, required);
+            }
+            default -> throw new IllegalArgumentException("Unknown condition: " + kind);
+        }
+    }
+
+    private static DslRule.Condition all(DslRule.Condition[] tests) {
+        if (tests.length == 1) {
+            return tests[0];
+        }
+        return cart -> {
+            for (DslRule.Condition t : tests) {
+                if (!t.test(cart)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private static DslRule.Condition any(DslRule.Condition[] tests) {
+        if (tests.length == 1) {
+            return tests[0];
+        }
+        return cart -> {
+            for (DslRule.Condition t : tests) {
+                if (t.test(cart)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    private static Selector selector(JsonNode node, Scope scope) {
+        if (node == null || node.isNull()) {
+            scope.global = true;
+            return new Selector((cart, line) -> true, null, null);
+        }
+        object(node, "selector", Set.of("products", "tags"));
+        long[] products = null;
+        String[] tags = null;
+        if (node.has("products")) {
+            JsonNode ids = node.get("products");
+            if (!ids.isArray()) {
+                throw new IllegalArgumentException("products must be an array of ids");
+            }
+            List<Long> list = new ArrayList<>();
+            for (JsonNode id : ids) {
+                if (!id.canConvertToExactIntegral() || !id.canConvertToLong()) {
+                    throw new IllegalArgumentException("products must be an array of ids");
+                }
+                list.add(id.longValue());
+            }
+            products = Rules.sortedIds(list, "products");
+            Arrays.stream(products).forEach(scope.products::add);
+        }
+        if (node.has("tags")) {
+            JsonNode values = node.get("tags");
+            if (!values.isArray() || values.isEmpty()) {
+                throw new IllegalArgumentException("tags must be a non-empty array of strings");
+            }
+            List<String> list = new ArrayList<>();
+            for (JsonNode tag : values) {
+                if (!tag.isTextual()) {
+                    throw new IllegalArgumentException("tags must be a non-empty array of strings");
+                }
+                list.add(tag.textValue());
+            }
+            tags = list.stream().distinct().toArray(String[]::new);
+            // a tag can be on any product
+            scope.global = true;
+        }
+        if (products == null && tags == null) {
+            throw new IllegalArgumentException("A selector needs products or tags");
+        }
+
+        long[] ids = products;
+        String[] wanted = tags;
+        DslRule.LineFilter filter;
+        if (wanted == null) {
+            filter = (cart, line) -> Arrays.binarySearch(ids, cart.productId(line)) >= 0;
+        } else if (ids == null) {
+            filter = (cart, line) -> cart.hasAnyTag(line, wanted);
+        } else {
+            filter = (cart, line) -> Arrays.binarySearch(ids, cart.productId(line)) >= 0 || cart.hasAnyTag(line, wanted);
+        }
+        return new Selector(filter, products, tags);
+    }
+
+    private static DslRule.Measure quantityOf(Selector s) {
+        if (s.productsOnly()) {
+            long[] ids = s.products();
+            return cart -> {
+                long qty = 0;
+                for (long id : ids) {
+                    qty += cart.quantityOf(id);
+                }
+                return qty;
+            };
+        }
+        DslRule.LineFilter filter = s.filter();
+        return cart -> {
+            long qty = 0;
+            for (int line = 0; line < cart.lineCount(); line++) {
+                if (filter.test(cart, line)) {
+                    qty += cart.quantity(line);
+                }
+            }
+            return qty;
+        };
+    }
+
+    // fits in a long: the cart total is checked when the cart is built
+    private static DslRule.Measure subtotalOf(Selector s) {
+        if (s.products() == null && s.tags() == null) {
+            return CartContext::getTotalCents;
+        }
+        if (s.productsOnly()) {
+            long[] ids = s.products();
+            return cart -> {
+                long sum = 0;
+                for (long id : ids) {
+                    for (int line = cart.firstLine(id); line >= 0; line = cart.nextLine(line)) {
+                        sum += cart.priceCents(line) * cart.quantity(line);
+                    }
+                }
+                return sum;
+            };
+        }
+        DslRule.LineFilter filter = s.filter();
+        return cart -> {
+            long sum = 0;
+            for (int line = 0; line < cart.lineCount(); line++) {
+                if (filter.test(cart, line)) {
+                    sum += cart.priceCents(line) * cart.quantity(line);
+                }
+            }
+            return sum;
+        };
+    }
+
+    // either requirement is valid when both must hold; the shorter one prunes more
+    private static long[] narrowest(long[] a, long[] b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return b.length < a.length ? b : a;
+    }
+
+    private static void object(JsonNode node, String name, Set<String> allowed) {
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException(name + " must be an object");
+        }
+        for (Iterator<String> it = node.fieldNames(); it.hasNext(); ) {
+            String key = it.next();
+            if (!allowed.contains(key)) {
+                throw new IllegalArgumentException("Unknown key in " + name + ": " + key);
+            }
+        }
+    }
+
+    private static void checkRange(long min, long max, String name) {
+        if (min > max) {
+            throw new IllegalArgumentException(name + ".min must not exceed " + name + ".max");
+        }
+    }
+
+    private static long amount(JsonNode node, String field) {
+        if (node == null || !node.isNumber()) {
+            throw new IllegalArgumentException(field + " must be a number");
+        }
+        return Rules.cents(node.decimalValue(), 0, field);
+    }
+
+    private static long count(JsonNode node, String field) {
+        if (node == null || !node.canConvertToExactIntegral() || !node.canConvertToLong() || node.longValue() < 0) {
+            throw new IllegalArgumentException(field + " must be a non-negative integer");
+        }
+        return node.longValue();
+    }
+
+    private static int percentBps(JsonNode node) {
+        if (node == null || !node.isNumber()) {
+            throw new IllegalArgumentException("percentOff must be a number");
+        }
+        BigDecimal percent = node.decimalValue();
+        if (percent.signum() < 0 || percent.compareTo(HUNDRED) > 0) {
+            throw new IllegalArgumentException("percentOff must be between 0 and 100");
+        }
+        return Money.toBasisPoints(percent, "percentOff");
+    }
+}
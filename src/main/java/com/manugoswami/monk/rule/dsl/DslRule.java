@@ -0,0 +1,101 @@
+package com.manugoswami.monk.rule.dsl;
+
+import com.manugoswami.monk.processor.CartContext;
+import com.manugoswami.monk.rule.CouponRule;
+import com.manugoswami.monk.util.Money;
+
+import java.util.BitSet;
+
+/**
+ * A RULE coupon compiled by {@link DslCompiler}: a condition tree and a discount, both made of
+ * lambdas bound to their parsed constants, so evaluation does no parsing, reflection or map
+ * lookups.
+ */
+public final class DslRule implements CouponRule {
+
+    @FunctionalInterface
+    public interface Condition {
+        boolean test(CartContext cart);
+    }
+
+    @FunctionalInterface
+    public interface LineFilter {
+        boolean test(CartContext cart, int line);
+    }
+
+    @FunctionalInterface
+    public interface Measure {
+        long of(CartContext cart);
+    }
+
+    private final Condition when;
+    // lines the discount is taken from, and their summed value
+    private final LineFilter target;
+    private final Measure targetSubtotal;
+    private final Measure discount;
+    private final long[] requiredProductIds;
+    private final long[] affectedProductIds;
+    // the payload this rule was compiled from; lambdas cannot be stored, so snapshots keep this
+    private final String payloadJson;
+
+    DslRule(Condition when, LineFilter target, Measure targetSubtotal, Measure discount,
+            long[] requiredProductIds, long[] affectedProductIds, String payloadJson) {
+        this.when = when;
+        this.target = target;
+        this.targetSubtotal = targetSubtotal;
+        this.discount = discount;
+        this.requiredProductIds = requiredProductIds;
+        this.affectedProductIds = affectedProductIds;
+        this.payloadJson = payloadJson;
+    }
+
+    public String payloadJson() {
+        return payloadJson;
+    }
+
+    @Override
+    public long[] requiredProductIds() {
+        return requiredProductIds;
+    }
+
+    @Override
+    public long[] affectedProductIds() {
+        return affectedProductIds;
+    }
+
+    public boolean matches(CartContext cart) {
+        return when.test(cart);
+    }
+
+    // discount in cents, never more than the value of the targeted lines
+    public long discount(CartContext cart) {
+        return discount.of(cart);
+    }
+
+    public BitSet targetLines(CartContext cart) {
+        BitSet lines = new BitSet(cart.lineCount());
+        for (int line = 0; line < cart.lineCount(); line++) {
+            if (target.test(cart, line)) {
+                lines.set(line);
+            }
+        }
+        return lines;
+    }
+
+    // spreads totalDiscount over the targeted lines in proportion to their value; the last one takes the rounding
+    public void distribute(CartContext cart, long totalDiscount, long[] lineDiscounts) {
+        long subtotal = targetSubtotal.of(cart);
+        if (subtotal == 0) {
+            return;
+        }
+        BitSet lines = targetLines(cart);
+        long distributed = 0;
+        for (int line = lines.nextSetBit(0); line >= 0; line = lines.nextSetBit(line + 1)) {
+            long share = lines.nextSetBit(line + 1) < 0
+                    ? totalDiscount - distributed
+                    : Money.proportionalShare(cart.priceCents(line) * cart.quantity(line), totalDiscount, subtotal);
+            distributed += share;
+            lineDiscounts[line] = share;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.manugoswami.monk.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.manugoswami.monk.dto.ApplicableCouponDto;
+import com.manugoswami.monk.index.CatalogSnapshot;
+import com.manugoswami.monk.processor.CartContext;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Size-bounded cache of applicable-coupon results keyed by catalog version and
+ * {@link CartFingerprint}. Every create/update/delete and every expiry eviction publishes a
+ * new catalog version, so stale entries are never hit again; they also expire on their own
+ * at the catalog's nearest coupon expiry and otherwise age out by size. Hit, miss, eviction
+ * and load-time meters are published as cache.* with cache=applicableCoupons.
+ */
+@Component
+public class ApplicableCouponCache {
+
+    private final Cache<Key, Entry> cache;
+
+    public ApplicableCouponCache(@Value("${monk.cache.applicable.max-size:10000}") long maxSize,
+                                 MeterRegistry registry) {
+        if (maxSize <= 0) {
+            cache = null;
+            return;
+        }
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new UntilNextExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, cache, "applicableCoupons");
+    }
+
+    public List<ApplicableCouponDto> get(CatalogSnapshot snapshot, CartContext cart,
+                                         Supplier<List<ApplicableCouponDto>> loader) {
+        if (cache == null) {
+            return loader.get();
+        }
+        Key key = new Key(snapshot.getVersion(), CartFingerprint.of(cart));
+        return cache.get(key, k -> new Entry(List.copyOf(loader.get()), snapshot.getNextExpiry())).coupons();
+    }
+
+    private record Key(long catalogVersion, CartFingerprint cart) {
+    }
+
+    private record Entry(List<ApplicableCouponDto> coupons, Instant validUntil) {
+    }
+
+    private static final class UntilNextExpiry implements Expiry<Key, Entry> {
+        @Override
+        public long expireAfterCreate(Key key, Entry entry, long currentTime) {
+            if (entry.validUntil() == null) {
+                return Long.MAX_VALUE;
+            }
+            Duration left = Duration.between(Instant.now(), entry.validUntil());
+            if (left.isNegative()) {
+                return 0;
+            }
+            return left.getSeconds() >= Long.MAX_VALUE / 1_000_000_000L ? Long.MAX_VALUE : left.toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(Key key, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(Key key, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.manugoswami.monk.service;
+
+import com.manugoswami.monk.dto.ApplicableCouponDto;
+import com.manugoswami.monk.index.CompiledCoupon;
+import com.manugoswami.monk.metrics.EvaluationStats;
+import com.manugoswami.monk.processor.CartContext;
+import com.manugoswami.monk.processor.CouponProcessor;
+import com.manugoswami.monk.util.Money;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs every candidate coupon's processor against a cart. Small requests are evaluated
+ * inline; once candidates x cart lines reaches {@code parallel-threshold} the candidate
+ * list is split across a fork-join pool. Each half is evaluated in order and the halves
+ * are concatenated, so the output is identical to the sequential loop.
+ *
+ * Stage times and counts are accumulated into the caller's {@link EvaluationStats}.
+ */
+@Component
+public class ApplicableCouponEvaluator {
+
+    private final long parallelThreshold;
+    private final ForkJoinPool pool;
+
+    public ApplicableCouponEvaluator(@Value("${monk.evaluation.parallel-threshold:20000}") long parallelThreshold,
+                                     @Value("${monk.evaluation.parallelism:0}") int parallelism) {
+        // 0 or less turns parallel evaluation off
+        this.parallelThreshold = parallelThreshold > 0 ? parallelThreshold : Long.MAX_VALUE;
+        this.pool = parallelism > 0 ? new ForkJoinPool(parallelism) : ForkJoinPool.commonPool();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != ForkJoinPool.commonPool()) {
+            pool.shutdown();
+        }
+    }
+
+    public List<ApplicableCouponDto> evaluate(List<CompiledCoupon> candidates, CartContext cart,
+                                              EvaluationStats stats) {
+        long work = (long) candidates.size() * Math.max(1, cart.lineCount());
+        if (work < parallelThreshold || pool.getParallelism() < 2) {
+            List<ApplicableCouponDto> result = new ArrayList<>();
+            evaluate(candidates, 0, candidates.size(), cart, result, stats);
+            return result;
+        }
+        // leaves of roughly a quarter of the threshold keep fork overhead small relative to the work
+        int leafSize = (int) Math.max(1, parallelThreshold / 4 / Math.max(1, cart.lineCount()));
+        Partial partial = pool.invoke(new EvaluateRange(candidates, 0, candidates.size(), cart, leafSize));
+        stats.merge(partial.stats);
+        return partial.coupons;
+    }
+
+    private static void evaluate(List<CompiledCoupon> candidates, int from, int to, CartContext cart,
+                                 List<ApplicableCouponDto> result, EvaluationStats stats) {
+        // consecutive candidates usually share a type, so the per-type bucket is looked up once per run
+        String type = null;
+        EvaluationStats.TypeStats ts = null;
+        for (int i = from; i < to; i++) {
+            CompiledCoupon c = candidates.get(i);
+            if (!c.getType().equals(type)) {
+                type = c.getType();
+                ts = stats.type(type);
+            }
+            CouponProcessor p = c.getProcessor();
+            ts.evaluated++;
+            try {
+                long start = System.nanoTime();
+                boolean applicable = p.isApplicable(cart, c.getRule());
+                long checked = System.nanoTime();
+                ts.applicableNanos += checked - start;
+                if (applicable) {
+                    long discount = p.calculateDiscount(cart, c.getRule());
+                    ts.discountNanos += System.nanoTime() - checked;
+                    if (discount > 0) {
+                        ts.matched++;
+                        result.add(new ApplicableCouponDto(c.getId(), c.getType(), Money.toBigDecimal(discount)));
+                    }
+                }
+            } catch (Exception e) {
+                ts.errors++;
+            }
+        }
+    }
+
+    private static final class Partial {
+        final List<ApplicableCouponDto> coupons = new ArrayList<>();
+        final EvaluationStats stats = new EvaluationStats();
+    }
+
+    private static final class EvaluateRange extends RecursiveTask<Partial> {
+        private final List<CompiledCoupon> candidates;
+        private final int from;
+        private final int to;
+        private final CartContext cart;
+        private final int leafSize;
+
+        EvaluateRange(List<CompiledCoupon> candidates, int from, int to, CartContext cart, int leafSize) {
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.cart = cart;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= leafSize) {
+                Partial partial = new Partial();
+                evaluate(candidates, from, to, cart, partial.coupons, partial.stats);
+                return partial;
+            }
+            int mid = (from + to) >>> 1;
+            EvaluateRange left = new EvaluateRange(candidates, from, mid, cart, leafSize);
+            left.fork();
+            Partial right = new EvaluateRange(candidates, mid, to, cart, leafSize).compute();
+            Partial result = left.join();
+            result.coupons.addAll(right.coupons);
+            result.stats.merge(right.stats);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.manugoswami.monk.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.manugoswami.monk.index.CatalogSnapshot;
+import com.manugoswami.monk.index.CouponIndex;
+import com.manugoswami.monk.processor.CartContext;
+import com.manugoswami.monk.processor.CartContextDeserializer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates many carts against one catalog snapshot. Carts are read one at a time from a
+ * JSON array or NDJSON stream straight into {@link CartContext}, evaluated on a bounded pool,
+ * and written back as NDJSON in input order. At most {@code window} carts per batch are in flight, so neither the input
+ * nor the output is ever held in memory as a whole.
+ */
+@Service
+public class BatchEvaluationService {
+
+    private final CouponService couponService;
+    private final CouponIndex couponIndex;
+    private final ObjectMapper om;
+    private final ThreadPoolExecutor pool;
+    private final int window;
+
+    public BatchEvaluationService(CouponService couponService,
+                                  CouponIndex couponIndex,
+                                  ObjectMapper om,
+                                  @Value("${monk.batch.threads:0}") int threads,
+                                  @Value("${monk.batch.window:256}") int window) {
+        this.couponService = couponService;
+        this.couponIndex = couponIndex;
+        this.om = om;
+        this.window = Math.max(1, window);
+
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger seq = new AtomicInteger();
+        // when the queue is full the submitting request thread evaluates the cart itself
+        this.pool = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(size * 64),
+                r -> {
+                    Thread t = new Thread(r, "coupon-batch-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Writes one line per input cart: the applicable coupons as a JSON array, or
+     * {@code {"error": "..."}} when that cart is invalid.
+     */
+    public void evaluate(InputStream in, OutputStream out) throws IOException {
+        CatalogSnapshot snapshot = couponIndex.snapshot();
+        Deque<Future<Object>> inFlight = new ArrayDeque<>();
+
+        try (JsonParser carts = om.getFactory().createParser(in)) {
+            // a top-level array of carts, or carts one after another (NDJSON)
+            JsonToken t = carts.nextToken();
+            boolean array = t == JsonToken.START_ARRAY;
+            if (array) {
+                t = carts.nextToken();
+            }
+            while (t != null && t != JsonToken.END_ARRAY) {
+                Object cart = read(carts);
+                inFlight.add(pool.submit(() -> evaluate(snapshot, cart)));
+                if (inFlight.size() >= window) {
+                    write(inFlight.poll(), out);
+                }
+                t = carts.nextToken();
+            }
+            while (!inFlight.isEmpty()) {
+                write(inFlight.poll(), out);
+            }
+            out.flush();
+        } finally {
+            for (Future<Object> f : inFlight) {
+                f.cancel(false);
+            }
+        }
+    }
+
+    // the cart, or the error line to write in its place
+    private static Object read(JsonParser carts) throws IOException {
+        try {
+            return CartContextDeserializer.read(carts);
+        } catch (IllegalArgumentException e) {
+            return Map.of("error", e.getMessage());
+        }
+    }
+
+    private Object evaluate(CatalogSnapshot snapshot, Object cart) {
+        return cart instanceof CartContext c ? couponService.cachedApplicableCoupons(snapshot, c) : cart;
+    }
+
+    private void write(Future<Object> result, OutputStream out) throws IOException {
+        if (!result.isDone()) {
+            // push out what is ready before waiting on the next cart
+            out.flush();
+        }
+        try {
+            out.write(om.writeValueAsBytes(result.get()));
+            out.write('\n');
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch evaluation interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Batch evaluation failed", e.getCause());
+        }
+    }
+}
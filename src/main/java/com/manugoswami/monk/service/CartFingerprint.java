@@ -0,0 +1,118 @@
+package com.manugoswami.monk.service;
+
+import com.manugoswami.monk.processor.CartContext;
+import com.manugoswami.monk.util.IndexSort;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Canonical identity of a cart for caching: its (productId, quantity, priceCents, tags) tuples
+ * in sorted order, so two carts listing the same lines in a different order are equal.
+ * Applicable-coupon results do not depend on line order, which is what makes this safe.
+ */
+final class CartFingerprint {
+
+    private final long[] tuples;
+    // sorted tags per line in tuple order; null when no line has tags
+    private final String[] tags;
+    private final int hash;
+
+    private CartFingerprint(long[] tuples, String[] tags) {
+        this.tuples = tuples;
+        this.tags = tags;
+        this.hash = 31 * Arrays.hashCode(tuples) + Arrays.hashCode(tags);
+    }
+
+    static CartFingerprint of(CartContext cart) {
+        int n = cart.lineCount();
+        String[] lineTags = null;
+        for (int line = 0; line < n; line++) {
+            String[] t = cart.tags(line);
+            if (t != null) {
+                if (lineTags == null) {
+                    lineTags = new String[n];
+                }
+                String[] sorted = t.clone();
+                Arrays.sort(sorted);
+                // NUL cannot be confused with a character inside a tag
+                lineTags[line] = String.join("\0", sorted);
+            }
+        }
+
+        // primitive sort by product id, then the few lines sharing an id by the rest of the tuple
+        long[] productIds = new long[n];
+        for (int line = 0; line < n; line++) {
+            productIds[line] = cart.productId(line);
+        }
+        int[] order = IndexSort.byKey(productIds);
+        String[] byLine = lineTags;
+        for (int from = 0, to; from < n; from = to) {
+            to = from + 1;
+            while (to < n && productIds[order[to]] == productIds[order[from]]) {
+                to++;
+            }
+            sortRun(cart, byLine, order, from, to);
+        }
+
+        long[] tuples = new long[n * 3];
+        String[] tags = byLine == null ? null : new String[n];
+        for (int i = 0; i < n; i++) {
+            int line = order[i];
+            tuples[i * 3] = cart.productId(line);
+            tuples[i * 3 + 1] = cart.quantity(line);
+            tuples[i * 3 + 2] = cart.priceCents(line);
+            if (tags != null) {
+                tags[i] = byLine[line];
+            }
+        }
+        return new CartFingerprint(tuples, tags);
+    }
+
+    private static void sortRun(CartContext cart, String[] tags, int[] order, int from, int to) {
+        if (to - from > 16) {
+            // unusual: many lines of one product
+            Integer[] run = new Integer[to - from];
+            for (int i = from; i < to; i++) {
+                run[i - from] = order[i];
+            }
+            Arrays.sort(run, (a, b) -> compareRest(cart, tags, a, b));
+            for (int i = from; i < to; i++) {
+                order[i] = run[i - from];
+            }
+            return;
+        }
+        for (int i = from + 1; i < to; i++) {
+            int line = order[i];
+            int j = i - 1;
+            while (j >= from && compareRest(cart, tags, order[j], line) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = line;
+        }
+    }
+
+    // lines with the same product id: by quantity, price, then tags (untagged first)
+    private static int compareRest(CartContext cart, String[] tags, int a, int b) {
+        int c = Integer.compare(cart.quantity(a), cart.quantity(b));
+        if (c == 0) {
+            c = Long.compare(cart.priceCents(a), cart.priceCents(b));
+        }
+        if (c == 0 && tags != null) {
+            c = Comparator.nullsFirst(Comparator.<String>naturalOrder()).compare(tags[a], tags[b]);
+        }
+        return c;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CartFingerprint other && hash == other.hash
+                && Arrays.equals(tuples, other.tuples) && Arrays.equals(tags, other.tags);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,280 @@
+package com.manugoswami.monk.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.manugoswami.monk.dto.ApplicableCouponDto;
+import com.manugoswami.monk.dto.CartDeltaDto;
+import com.manugoswami.monk.dto.CartDto;
+import com.manugoswami.monk.dto.CartItemDto;
+import com.manugoswami.monk.dto.CartSessionDto;
+import com.manugoswami.monk.index.CatalogSnapshot;
+import com.manugoswami.monk.index.CompiledCoupon;
+import com.manugoswami.monk.index.CouponIndex;
+import com.manugoswami.monk.metrics.CouponMetrics;
+import com.manugoswami.monk.metrics.EvaluationStats;
+import com.manugoswami.monk.processor.CartContext;
+import com.manugoswami.monk.util.Money;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Server-side carts that change through item deltas. Each session keeps the applicable-coupon
+ * result of its last evaluation; after a delta only the coupons whose result the changed
+ * products can affect are re-run, plus the CART_WISE coupons when the cart total moved.
+ * A new catalog version re-evaluates the session in full, so the result always equals
+ * /applicable-coupons for the session's items.
+ *
+ * Sessions are held in a size-bounded store and dropped after {@code ttl-minutes} without use;
+ * store meters are published as cache.* with cache=cartSessions.
+ */
+@Service
+public class CartSessionService {
+
+    private final CouponIndex couponIndex;
+    private final ApplicableCouponEvaluator evaluator;
+    private final CouponMetrics metrics;
+    private final Cache<String, Session> sessions;
+
+    public CartSessionService(CouponIndex couponIndex,
+                              ApplicableCouponEvaluator evaluator,
+                              CouponMetrics metrics,
+                              MeterRegistry registry,
+                              @Value("${monk.session.max-size:100000}") long maxSize,
+                              @Value("${monk.session.ttl-minutes:30}") long ttlMinutes) {
+        this.couponIndex = couponIndex;
+        this.evaluator = evaluator;
+        this.metrics = metrics;
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, sessions, "cartSessions");
+    }
+
+    private static final class Session {
+        final String id;
+        // one line per product, in the order products were first added
+        Map<Long, CartItemDto> items = new LinkedHashMap<>();
+        long totalCents;
+
+        long catalogVersion = -1;
+        long evaluatedTotal = -1;
+        // results of the non-CART_WISE coupons, by coupon id
+        final TreeMap<Long, ApplicableCouponDto> productResults = new TreeMap<>();
+        List<ApplicableCouponDto> cartWiseResults = List.of();
+
+        Session(String id) {
+            this.id = id;
+        }
+    }
+
+    public CartSessionDto create(CartDto cart) {
+        List<CartDeltaDto> adds = new ArrayList<>();
+        if (cart != null && cart.getItems() != null) {
+            for (CartItemDto item : cart.getItems()) {
+                if (item == null) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cart items require productId, quantity and price");
+                }
+                adds.add(new CartDeltaDto(CartDeltaDto.Op.ADD, item.getProductId(), item.getQuantity(), item.getPrice(), item.getTags()));
+            }
+        }
+        Session session = new Session(UUID.randomUUID().toString());
+        synchronized (session) {
+            update(session, adds);
+            sessions.put(session.id, session);
+            return view(session);
+        }
+    }
+
+    public CartSessionDto get(String id) {
+        Session session = find(id);
+        synchronized (session) {
+            // re-evaluates in full if the catalog changed since the last call
+            evaluate(session, context(session.items), Set.of());
+            return view(session);
+        }
+    }
+
+    public CartSessionDto apply(String id, List<CartDeltaDto> deltas) {
+        Session session = find(id);
+        synchronized (session) {
+            update(session, deltas != null ? deltas : List.of());
+            return view(session);
+        }
+    }
+
+    public void delete(String id) {
+        if (sessions.asMap().remove(id) == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Cart session not found");
+        }
+    }
+
+    // HELPERS -------------------------------------------------------------------
+    private Session find(String id) {
+        Session session = sessions.getIfPresent(id);
+        if (session == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Cart session not found");
+        }
+        return session;
+    }
+
+    // all deltas are applied or none: the session is left untouched when one is invalid
+    private void update(Session session, List<CartDeltaDto> deltas) {
+        Map<Long, CartItemDto> next = new LinkedHashMap<>(session.items);
+        Set<Long> changed = new HashSet<>();
+        for (CartDeltaDto delta : deltas) {
+            try {
+                applyDelta(next, delta);
+            } catch (ArithmeticException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Quantity is out of range");
+            }
+            changed.add(delta.getProductId());
+        }
+        CartContext cart = context(next);
+        session.items = next;
+        evaluate(session, cart, changed);
+    }
+
+    private static void applyDelta(Map<Long, CartItemDto> items, CartDeltaDto delta) {
+        if (delta == null || delta.getOp() == null || delta.getProductId() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Deltas require op and productId");
+        }
+        Long productId = delta.getProductId();
+        CartItemDto current = items.get(productId);
+        Integer qty = delta.getQuantity();
+        switch (delta.getOp()) {
+            case ADD -> {
+                if (qty == null || qty < 1) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ADD requires a positive quantity");
+                }
+                int total = current == null ? qty : Math.addExact(current.getQuantity(), qty);
+                items.put(productId, item(productId, total, price(delta, current), tags(delta, current)));
+            }
+            case REMOVE -> {
+                if (current == null) {
+                    return;
+                }
+                if (qty != null && qty < 1) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "REMOVE quantity must be positive");
+                }
+                int left = qty == null ? 0 : current.getQuantity() - qty;
+                if (left <= 0) {
+                    items.remove(productId);
+                } else {
+                    items.put(productId, item(productId, left, current.getPrice(), current.getTags()));
+                }
+            }
+            case SET -> {
+                if (qty == null || qty < 0) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "SET requires a quantity of 0 or more");
+                }
+                if (qty == 0) {
+                    items.remove(productId);
+                } else {
+                    items.put(productId, item(productId, qty, price(delta, current), tags(delta, current)));
+                }
+            }
+        }
+    }
+
+    private static BigDecimal price(CartDeltaDto delta, CartItemDto current) {
+        if (delta.getPrice() != null) {
+            return delta.getPrice();
+        }
+        if (current == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Price is required for a new product");
+        }
+        return current.getPrice();
+    }
+
+    private static List<String> tags(CartDeltaDto delta, CartItemDto current) {
+        if (delta.getTags() != null || current == null) {
+            return delta.getTags();
+        }
+        return current.getTags();
+    }
+
+    private static CartItemDto item(Long productId, int quantity, BigDecimal price, List<String> tags) {
+        CartItemDto item = new CartItemDto();
+        item.setProductId(productId);
+        item.setQuantity(quantity);
+        item.setPrice(price);
+        item.setTags(tags);
+        return item;
+    }
+
+    private static CartContext context(Map<Long, CartItemDto> items) {
+        CartDto cart = new CartDto();
+        cart.setItems(new ArrayList<>(items.values()));
+        try {
+            return CartContext.of(cart);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    private void evaluate(Session session, CartContext cart, Set<Long> changed) {
+        long start = System.nanoTime();
+        CatalogSnapshot snapshot = couponIndex.snapshot();
+        boolean full = snapshot.getVersion() != session.catalogVersion;
+
+        List<CompiledCoupon> affected;
+        if (full) {
+            session.productResults.clear();
+            affected = snapshot.affectedBy(cart.distinctProductIds());
+        } else if (changed.isEmpty()) {
+            affected = List.of();
+        } else {
+            affected = snapshot.affectedBy(changed.stream().mapToLong(Long::longValue).toArray());
+        }
+        // a CART_WISE discount depends only on the total, and the applicable ones are a threshold prefix
+        boolean totalMoved = full || cart.getTotalCents() != session.evaluatedTotal;
+        List<CompiledCoupon> cartWise = totalMoved ? snapshot.cartWiseCandidates(cart.getTotalCents()) : List.of();
+        metrics.stage(CouponMetrics.SESSION, CouponMetrics.ALL_TYPES, CouponMetrics.CANDIDATE_FETCH, System.nanoTime() - start);
+
+        EvaluationStats stats = new EvaluationStats();
+        for (CompiledCoupon c : affected) {
+            session.productResults.remove(c.getId());
+        }
+        for (ApplicableCouponDto r : evaluator.evaluate(affected, cart, stats)) {
+            session.productResults.put(r.getCouponId(), r);
+        }
+        if (totalMoved) {
+            session.cartWiseResults = evaluator.evaluate(cartWise, cart, stats);
+            session.evaluatedTotal = cart.getTotalCents();
+        }
+        metrics.evaluation(CouponMetrics.SESSION, stats);
+
+        session.catalogVersion = snapshot.getVersion();
+        session.totalCents = cart.getTotalCents();
+    }
+
+    // both result lists are ordered by coupon id, like a full evaluation
+    private static CartSessionDto view(Session session) {
+        List<ApplicableCouponDto> coupons = new ArrayList<>(session.productResults.size() + session.cartWiseResults.size());
+        Iterator<ApplicableCouponDto> a = session.productResults.values().iterator();
+        Iterator<ApplicableCouponDto> b = session.cartWiseResults.iterator();
+        ApplicableCouponDto x = a.hasNext() ? a.next() : null;
+        ApplicableCouponDto y = b.hasNext() ? b.next() : null;
+        while (x != null || y != null) {
+            if (y == null || (x != null && x.getCouponId() < y.getCouponId())) {
+                coupons.add(x);
+                x = a.hasNext() ? a.next() : null;
+            } else {
+                coupons.add(y);
+                y = b.hasNext() ? b.next() : null;
+            }
+        }
+        return new CartSessionDto(session.id, new ArrayList<>(session.items.values()),
+                Money.toBigDecimal(session.totalCents), coupons);
+    }
+}
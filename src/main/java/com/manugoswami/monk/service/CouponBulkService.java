@@ -0,0 +1,240 @@
+package com.manugoswami.monk.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.manugoswami.monk.dto.ImportErrorDto;
+import com.manugoswami.monk.dto.ImportReportDto;
+import com.manugoswami.monk.index.CouponCompiler;
+import com.manugoswami.monk.index.CouponIndex;
+import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.repository.CouponRepository;
+import com.manugoswami.monk.rule.CouponRule;
+import com.manugoswami.monk.sync.CouponChangeEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Streaming NDJSON import and export of the coupon catalog.
+ *
+ * Import reads one coupon per line, validates it like a single create would, and inserts
+ * valid coupons in chunks of {@code chunk-size}, one transaction and one JDBC batch per
+ * chunk. If a chunk hits a constraint (such as a code that already exists) it is retried
+ * row by row so only the offending lines fail. Every failure goes into the report with
+ * its line number; the report keeps the first {@code max-reported-errors} of them.
+ * Duplicate codes are caught within a chunk here and across chunks by the unique constraint,
+ * so memory stays bounded by one chunk plus the coupons not yet published.
+ *
+ * Saved coupons reach the index in batches of {@code publish-size}, and at the end of the
+ * import, rather than once per chunk.
+ *
+ * Export walks the table in id order a page at a time, so memory is bounded by one page.
+ */
+@Service
+public class CouponBulkService {
+
+    private final CouponRepository couponRepository;
+    private final CouponCompiler compiler;
+    private final CouponIndex couponIndex;
+    private final TransactionTemplate tx;
+    private final ObjectMapper om;
+    private final ApplicationEventPublisher events;
+    private final int chunkSize;
+    private final int publishSize;
+    private final int maxReportedErrors;
+    private final int exportPageSize;
+
+    public CouponBulkService(CouponRepository couponRepository,
+                             CouponCompiler compiler,
+                             CouponIndex couponIndex,
+                             TransactionTemplate tx,
+                             ObjectMapper om,
+                             ApplicationEventPublisher events,
+                             @Value("${monk.import.chunk-size:500}") int chunkSize,
+                             @Value("${monk.import.publish-size:20000}") int publishSize,
+                             @Value("${monk.import.max-reported-errors:1000}") int maxReportedErrors,
+                             @Value("${monk.export.page-size:1000}") int exportPageSize) {
+        this.couponRepository = couponRepository;
+        this.compiler = compiler;
+        this.couponIndex = couponIndex;
+        this.tx = tx;
+        this.om = om;
+        this.events = events;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.publishSize = Math.max(1, publishSize);
+        this.maxReportedErrors = Math.max(0, maxReportedErrors);
+        this.exportPageSize = Math.max(1, exportPageSize);
+    }
+
+    public ImportReportDto importNdjson(InputStream in) throws IOException {
+        ImportReportDto report = new ImportReportDto();
+        // saved but not yet in the index
+        Chunk saved = new Chunk();
+        try {
+            read(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), report, saved);
+        } finally {
+            publish(saved);
+        }
+        return report;
+    }
+
+    private void read(BufferedReader reader, ImportReportDto report, Chunk saved) throws IOException {
+        Chunk chunk = new Chunk();
+        String text;
+        long line = 0;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            if (text.isBlank()) {
+                continue;
+            }
+            Coupon coupon;
+            try {
+                coupon = om.readValue(text, Coupon.class);
+            } catch (JsonProcessingException e) {
+                fail(report, line, null, "Invalid JSON: " + e.getOriginalMessage());
+                continue;
+            }
+            String error = validate(coupon, chunk);
+            if (error != null) {
+                fail(report, line, coupon.getCode(), error);
+                continue;
+            }
+            CouponRule rule;
+            try {
+                rule = compiler.compileRule(coupon);
+            } catch (IllegalArgumentException e) {
+                fail(report, line, coupon.getCode(), e.getMessage());
+                continue;
+            }
+            // ids and versions are always assigned here
+            coupon.setId(null);
+            coupon.setVersion(null);
+            chunk.add(line, coupon, rule);
+            if (chunk.size() == chunkSize) {
+                write(chunk, report, saved);
+                chunk = new Chunk();
+            }
+        }
+        if (chunk.size() > 0) {
+            write(chunk, report, saved);
+        }
+    }
+
+    public void exportNdjson(OutputStream out) throws IOException {
+        ObjectWriter writer = om.writerFor(Coupon.class);
+        long afterId = 0;
+        while (true) {
+            List<Coupon> page = couponRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, exportPageSize));
+            for (Coupon c : page) {
+                out.write(writer.writeValueAsBytes(c));
+                out.write('\n');
+            }
+            if (page.size() < exportPageSize) {
+                break;
+            }
+            afterId = page.get(page.size() - 1).getId();
+            out.flush();
+        }
+        out.flush();
+    }
+
+    private String validate(Coupon coupon, Chunk chunk) {
+        if (coupon.getCode() == null || coupon.getCode().isBlank()) {
+            return "code is required";
+        }
+        if (chunk.codes.contains(coupon.getCode())) {
+            return "Duplicate code in import: " + coupon.getCode();
+        }
+        return null;
+    }
+
+    private void write(Chunk chunk, ImportReportDto report, Chunk saved) {
+        try {
+            List<Coupon> written = tx.execute(status -> couponRepository.saveAllAndFlush(chunk.coupons));
+            for (int i = 0; i < written.size(); i++) {
+                saved.add(chunk.lines.get(i), written.get(i), chunk.rules.get(i));
+            }
+            report.setImported(report.getImported() + written.size());
+            publishIfFull(saved);
+            return;
+        } catch (DataIntegrityViolationException e) {
+            // fall through: find the offending rows one by one
+        }
+
+        for (int i = 0; i < chunk.size(); i++) {
+            Coupon c = chunk.coupons.get(i);
+            c.setId(null);
+            c.setVersion(null);
+            try {
+                saved.add(chunk.lines.get(i), tx.execute(status -> couponRepository.saveAndFlush(c)), chunk.rules.get(i));
+                report.setImported(report.getImported() + 1);
+            } catch (DataIntegrityViolationException e) {
+                fail(report, chunk.lines.get(i), c.getCode(), "Coupon violates a constraint (code already exists?)");
+            }
+        }
+        publishIfFull(saved);
+    }
+
+    private void publishIfFull(Chunk saved) {
+        if (saved.size() >= publishSize) {
+            publish(saved);
+        }
+    }
+
+    // one index update for everything saved since the last publish
+    private void publish(Chunk saved) {
+        if (saved.size() == 0) {
+            return;
+        }
+        couponIndex.putAll(saved.coupons, saved.rules);
+        for (Coupon c : saved.coupons) {
+            events.publishEvent(CouponChangeEvent.upsert(c));
+        }
+        saved.clear();
+    }
+
+    private void fail(ImportReportDto report, long line, String code, String message) {
+        report.setFailed(report.getFailed() + 1);
+        if (report.getErrors().size() < maxReportedErrors) {
+            report.getErrors().add(new ImportErrorDto(line, code, message));
+        } else {
+            report.setErrorsTruncated(true);
+        }
+    }
+
+    private static final class Chunk {
+        final List<Long> lines = new ArrayList<>();
+        final List<Coupon> coupons = new ArrayList<>();
+        final List<CouponRule> rules = new ArrayList<>();
+        final Set<String> codes = new HashSet<>();
+
+        void add(long line, Coupon coupon, CouponRule rule) {
+            lines.add(line);
+            coupons.add(coupon);
+            rules.add(rule);
+            codes.add(coupon.getCode());
+        }
+
+        int size() {
+            return coupons.size();
+        }
+
+        void clear() {
+            lines.clear();
+            coupons.clear();
+            rules.clear();
+            codes.clear();
+        }
+    }
+}
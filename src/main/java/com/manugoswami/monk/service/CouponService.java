@@ -1,44 +1,98 @@
 package com.manugoswami.monk.service;
 
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.manugoswami.monk.dto.ApplicableCouponDto;
+import com.manugoswami.monk.dto.BestCouponsDto;
 import com.manugoswami.monk.dto.CartDto;
-import com.manugoswami.monk.dto.CartItemDto;
+import com.manugoswami.monk.dto.CouponPageDto;
+import com.manugoswami.monk.dto.CouponSummaryDto;
 import com.manugoswami.monk.dto.UpdatedCartDto;
 import com.manugoswami.monk.dto.UpdatedItemDto;
+import com.manugoswami.monk.index.CatalogSnapshot;
+import com.manugoswami.monk.index.CompiledCoupon;
+import com.manugoswami.monk.index.CouponCompiler;
+import com.manugoswami.monk.index.CouponIndex;
+import com.manugoswami.monk.metrics.CouponMetrics;
+import com.manugoswami.monk.metrics.EvaluationStats;
 import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.model.CouponRedemption;
+import com.manugoswami.monk.processor.CartContext;
 import com.manugoswami.monk.processor.CouponProcessor;
-import com.manugoswami.monk.processor.ProcessorRegistry;
+import com.manugoswami.monk.repository.CouponFilter;
 import com.manugoswami.monk.repository.CouponRepository;
+import com.manugoswami.monk.rule.CouponRule;
+import com.manugoswami.monk.sync.CouponChangeEvent;
+import com.manugoswami.monk.util.Money;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 @Service
 public class CouponService {
 
-    private final CouponRepository couponRepository;
-    private final ProcessorRegistry registry;
-    private final ObjectMapper om = new ObjectMapper();
+    static final int MAX_PAGE_SIZE = 1000;
 
-    public CouponService(CouponRepository couponRepository, ProcessorRegistry registry) {
+    private final CouponRepository couponRepository;
+    private final CouponCompiler compiler;
+    private final CouponIndex couponIndex;
+    private final StackingOptimizer optimizer;
+    private final ApplicableCouponEvaluator evaluator;
+    private final CouponMetrics metrics;
+    private final ApplicableCouponCache cache;
+    private final ApplicationEventPublisher events;
+    private final RedemptionLimiter limiter;
+    private final RedemptionLedger ledger;
+    private final TransactionTemplate tx;
+
+    public CouponService(CouponRepository couponRepository, CouponCompiler compiler, CouponIndex couponIndex,
+                         StackingOptimizer optimizer, ApplicableCouponEvaluator evaluator, CouponMetrics metrics,
+                         ApplicableCouponCache cache, ApplicationEventPublisher events,
+                         RedemptionLimiter limiter, RedemptionLedger ledger, TransactionTemplate tx) {
         this.couponRepository = couponRepository;
-        this.registry = registry;
+        this.compiler = compiler;
+        this.couponIndex = couponIndex;
+        this.optimizer = optimizer;
+        this.evaluator = evaluator;
+        this.metrics = metrics;
+        this.cache = cache;
+        this.events = events;
+        this.limiter = limiter;
+        this.ledger = ledger;
+        this.tx = tx;
     }
 
     // CRUD
     public Coupon create(Coupon c) {
-        return couponRepository.save(c);
+        CouponRule rule = compile(c);
+        c.setVersion(null); // assigned by JPA
+        Coupon saved = tx.execute(status -> {
+            Coupon row = couponRepository.save(c);
+            if (row.getMaxRedemptions() != null && row.getMaxRedemptions() > 0) {
+                limiter.createUsage(row.getId());
+            }
+            return row;
+        });
+        couponIndex.put(saved, rule);
+        events.publishEvent(CouponChangeEvent.upsert(saved));
+        return saved;
     }
 
-    public List<Coupon> getAll() {
-        return couponRepository.findAll();
+    public CouponPageDto<?> list(CouponFilter filter, Long after, int limit, boolean summary) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        // one extra row tells whether another page exists
+        if (summary) {
+            return page(couponRepository.findSummaryPage(filter, after, limit + 1), limit, CouponSummaryDto::getId);
+        }
+        return page(couponRepository.findPage(filter, after, limit + 1), limit, Coupon::getId);
     }
 
     public Coupon getById(Long id) {
@@ -54,295 +108,185 @@ public class CouponService {
         exist.setPayloadJson(payload.getPayloadJson());
         exist.setEnabled(payload.getEnabled());
         exist.setExpiresAt(payload.getExpiresAt());
-        return couponRepository.save(exist);
+        exist.setStackable(payload.getStackable());
+        exist.setStackGroup(payload.getStackGroup());
+        exist.setMaxRedemptions(payload.getMaxRedemptions());
+        exist.setMaxRedemptionsPerUser(payload.getMaxRedemptionsPerUser());
+        CouponRule rule = compile(exist);
+        Coupon saved;
+        try {
+            saved = couponRepository.save(exist);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Coupon was modified concurrently");
+        }
+        couponIndex.put(saved, rule);
+        // tokens held here were reserved under the old limits
+        limiter.release(id);
+        events.publishEvent(CouponChangeEvent.upsert(saved));
+        return saved;
     }
 
     public void delete(Long id) {
         couponRepository.deleteById(id);
+        couponIndex.remove(id);
+        limiter.release(id);
+        events.publishEvent(CouponChangeEvent.delete(id));
     }
 
     // BUSINESS --------------------------------------------------------------
-    public List<ApplicableCouponDto> findApplicableCoupons(CartDto cart) {
-        Instant now = Instant.now();
+    public List<ApplicableCouponDto> findApplicableCoupons(CartDto cartDto) {
+        return findApplicableCoupons(cartContext(cartDto));
+    }
+
+    public List<ApplicableCouponDto> findApplicableCoupons(CartContext cart) {
+        return cachedApplicableCoupons(couponIndex.snapshot(), cart);
+    }
 
-        List<Coupon> all = couponRepository.findAll()
-                .stream()
-                .filter(c -> Boolean.TRUE.equals(c.getEnabled()))
-                .filter(c -> c.getExpiresAt() == null || c.getExpiresAt().isAfter(now))
-                .collect(Collectors.toList());
+    public List<ApplicableCouponDto> cachedApplicableCoupons(CatalogSnapshot snapshot, CartContext cart) {
+        return cache.get(snapshot, cart, () -> findApplicableCoupons(snapshot, cart));
+    }
 
-        List<ApplicableCouponDto> result = new ArrayList<>();
+    public List<ApplicableCouponDto> findApplicableCoupons(CatalogSnapshot snapshot, CartContext cart) {
+        long start = System.nanoTime();
+        List<CompiledCoupon> candidates = snapshot.candidates(cart);
+        metrics.stage(CouponMetrics.FIND, CouponMetrics.ALL_TYPES, CouponMetrics.CANDIDATE_FETCH, System.nanoTime() - start);
 
-        for (Coupon c : all) {
-            CouponProcessor p = registry.getProcessor(c.getType());
-            if (p == null) {
-                continue;
-            }
-            try {
-                if (p.isApplicable(cart, c)) {
-                    BigDecimal discount = p.calculateDiscount(cart, c);
-                    if (discount.compareTo(BigDecimal.ZERO) > 0) {
-                        result.add(new ApplicableCouponDto(c.getId(), c.getType(), discount));
-                    }
-                }
-            } catch (Exception ignored) {
-            }
-        }
+        EvaluationStats stats = new EvaluationStats();
+        List<ApplicableCouponDto> result = evaluator.evaluate(candidates, cart, stats);
+        metrics.evaluation(CouponMetrics.FIND, stats);
         return result;
     }
 
-    public UpdatedCartDto applyCoupon(Long couponId, CartDto cart) {
-        Coupon coupon = getById(couponId);
-        Instant now = Instant.now();
+    public BestCouponsDto findBestCoupons(CartDto cartDto) {
+        return findBestCoupons(cartContext(cartDto));
+    }
 
-        if (!Boolean.TRUE.equals(coupon.getEnabled())
-                || (coupon.getExpiresAt() != null && coupon.getExpiresAt().isBefore(now))) {
-            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "Coupon not active");
+    public BestCouponsDto findBestCoupons(CartContext cart) {
+        CatalogSnapshot snapshot = couponIndex.snapshot();
+        List<CompiledCoupon> candidates = snapshot.nonCartWiseCandidates(cart);
+        candidates.addAll(snapshot.bestCartWisePerStackingClass(cart.getTotalCents()));
+        List<StackingOptimizer.Option> options = new ArrayList<>();
+
+        for (CompiledCoupon c : candidates) {
+            CouponProcessor p = c.getProcessor();
+            if (p.isApplicable(cart, c.getRule())) {
+                long discount = p.calculateDiscount(cart, c.getRule());
+                if (discount > 0) {
+                    options.add(new StackingOptimizer.Option(c, discount, p.discountedLines(cart, c.getRule())));
+                }
+            }
         }
 
-        CouponProcessor p = registry.getProcessor(coupon.getType());
-        if (p == null) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported coupon type");
+        StackingOptimizer.Result best = optimizer.optimize(options, cart.getTotalCents());
+        List<ApplicableCouponDto> coupons = new ArrayList<>();
+        for (StackingOptimizer.Option o : best.getChosen()) {
+            CompiledCoupon c = o.getCoupon();
+            coupons.add(new ApplicableCouponDto(c.getId(), c.getType(), Money.toBigDecimal(o.getDiscount())));
         }
+        return new BestCouponsDto(coupons, Money.toBigDecimal(best.getDiscount()), best.isOptimal());
+    }
 
-        if (!p.isApplicable(cart, coupon)) {
+    public UpdatedCartDto applyCoupon(Long couponId, CartDto cartDto) {
+        return applyCoupon(couponId, cartContext(cartDto));
+    }
+
+    public UpdatedCartDto applyCoupon(Long couponId, CartContext cart) {
+        long fetchStart = System.nanoTime();
+        CompiledCoupon coupon = couponIndex.get(couponId);
+        if (coupon == null) {
+            // not in the active index: either unknown (404) or disabled/expired
+            getById(couponId);
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "Coupon not active");
+        }
+        metrics.stage(CouponMetrics.APPLY, coupon.getType(), CouponMetrics.CANDIDATE_FETCH, System.nanoTime() - fetchStart);
+
+        CouponProcessor p = coupon.getProcessor();
+        EvaluationStats stats = new EvaluationStats();
+        EvaluationStats.TypeStats ts = stats.type(coupon.getType());
+        ts.evaluated++;
+
+        long start = System.nanoTime();
+        boolean applicable = p.isApplicable(cart, coupon.getRule());
+        long checked = System.nanoTime();
+        ts.applicableNanos = checked - start;
+        if (!applicable) {
+            metrics.evaluation(CouponMetrics.APPLY, stats);
             throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "Coupon not applicable to cart");
         }
 
-        BigDecimal totalDiscount = p.applyAndReturnTotalDiscount(cart, coupon);
+        // per-line discounts in cents, converted to DTOs at the end
+        long[] lineDiscounts = new long[cart.lineCount()];
+        long totalPrice = cart.getTotalCents();
+        long totalDiscount = p.applyAndReturnTotalDiscount(cart, coupon.getRule(), lineDiscounts, ts);
+        ts.discountNanos = System.nanoTime() - checked - ts.distributionNanos;
+        if (totalDiscount > 0) {
+            ts.matched++;
+        }
+        metrics.evaluation(CouponMetrics.APPLY, stats);
 
         List<UpdatedItemDto> updated = new ArrayList<>();
-        BigDecimal totalPrice = cart.getItems()
-                .stream()
-                .map(i -> i.getPrice().multiply(new BigDecimal(i.getQuantity())))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        // COUPON TYPE HANDLING ---------------------------------------------------
-        if ("CART_WISE".equals(coupon.getType())) {
-            applyCartWiseDiscount(cart, totalDiscount, updated, totalPrice);
-
-        } else if ("PRODUCT_WISE".equals(coupon.getType())) {
-            applyProductWiseDiscount(cart, coupon, totalDiscount, updated);
-
-        } else if ("BXGY".equals(coupon.getType())) {
-            applyBxGyDiscount(cart, coupon, updated);
-
-        } else {
-            // fallback: no per-item distribution
-            for (CartItemDto it : cart.getItems()) {
-                updated.add(new UpdatedItemDto(
-                        it.getProductId(),
-                        it.getQuantity(),
-                        it.getPrice(),
-                        BigDecimal.ZERO
-                ));
-            }
+        for (int line = 0; line < cart.lineCount(); line++) {
+            updated.add(new UpdatedItemDto(
+                    cart.productId(line),
+                    cart.quantity(line),
+                    Money.toBigDecimal(cart.priceCents(line)),
+                    Money.toBigDecimal(lineDiscounts[line])
+            ));
         }
 
-        BigDecimal aggregatedDiscount = updated.stream()
-                .map(UpdatedItemDto::getTotalDiscount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add)
-                .setScale(2, BigDecimal.ROUND_HALF_UP);
-
-        BigDecimal finalPrice = totalPrice
-                .subtract(aggregatedDiscount)
-                .setScale(2, BigDecimal.ROUND_HALF_UP);
-
         return new UpdatedCartDto(
                 updated,
-                totalPrice.setScale(2, BigDecimal.ROUND_HALF_UP),
-                aggregatedDiscount,
-                finalPrice
+                Money.toBigDecimal(totalPrice),
+                Money.toBigDecimal(totalDiscount),
+                Money.toBigDecimal(totalPrice - totalDiscount)
         );
     }
 
-    // HELPERS -------------------------------------------------------------------
-    private void applyCartWiseDiscount(
-            CartDto cart,
-            BigDecimal totalDiscount,
-            List<UpdatedItemDto> updated,
-            BigDecimal totalPrice
-    ) {
-        if (totalPrice.compareTo(BigDecimal.ZERO) == 0) {
-            for (CartItemDto it : cart.getItems()) {
-                updated.add(new UpdatedItemDto(
-                        it.getProductId(),
-                        it.getQuantity(),
-                        it.getPrice(),
-                        BigDecimal.ZERO
-                ));
-            }
-            return;
-        }
-
-        BigDecimal distributed = BigDecimal.ZERO;
-
-        for (int i = 0; i < cart.getItems().size(); i++) {
-            CartItemDto it = cart.getItems().get(i);
-            BigDecimal itemTotal = it.getPrice().multiply(new BigDecimal(it.getQuantity()));
-
-            BigDecimal share = itemTotal
-                    .multiply(totalDiscount)
-                    .divide(totalPrice, 8, BigDecimal.ROUND_HALF_UP)
-                    .setScale(2, BigDecimal.ROUND_HALF_UP);
-
-            if (i == cart.getItems().size() - 1) {
-                share = totalDiscount.subtract(distributed);
-            }
+    /**
+     * Applies the coupon and records it as redeemed by the user, enforcing the coupon's
+     * global and per-user redemption caps.
+     */
+    public UpdatedCartDto redeemCoupon(Long couponId, String userId, CartDto cartDto) {
+        return redeemCoupon(couponId, userId, cartContext(cartDto));
+    }
 
-            distributed = distributed.add(share);
+    public UpdatedCartDto redeemCoupon(Long couponId, String userId, CartContext cart) {
+        UpdatedCartDto result = applyCoupon(couponId, cart);
+        CompiledCoupon coupon = couponIndex.get(couponId);
+        if (coupon == null) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "Coupon not active");
+        }
+        if (coupon.getMaxRedemptionsPerUser() > 0 && (userId == null || userId.isBlank())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "User id is required for this coupon");
+        }
+        if (!limiter.tryAcquire(couponId, userId, coupon.getMaxRedemptions(), coupon.getMaxRedemptionsPerUser())) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Coupon redemption limit reached");
+        }
+        ledger.record(new CouponRedemption(couponId, userId, result.getTotalDiscount(), Instant.now()));
+        return result;
+    }
 
-            updated.add(new UpdatedItemDto(
-                    it.getProductId(),
-                    it.getQuantity(),
-                    it.getPrice(),
-                    share
-            ));
+    // HELPERS -------------------------------------------------------------------
+    private static <T> CouponPageDto<T> page(List<T> rows, int limit, Function<T, Long> id) {
+        if (rows.size() > limit) {
+            return new CouponPageDto<>(rows.subList(0, limit), id.apply(rows.get(limit - 1)));
         }
+        return new CouponPageDto<>(rows, null);
     }
 
-    private void applyProductWiseDiscount(
-            CartDto cart,
-            Coupon coupon,
-            BigDecimal totalDiscount,
-            List<UpdatedItemDto> updated
-    ) {
+    private CouponRule compile(Coupon c) {
         try {
-            com.manugoswami.monk.payload.ProductWisePayload pw =
-                    om.readValue(coupon.getPayloadJson(),
-                            com.manugoswami.monk.payload.ProductWisePayload.class);
-
-            BigDecimal appliedTotal = BigDecimal.ZERO;
-
-            for (CartItemDto it : cart.getItems()) {
-                BigDecimal itemDiscount = BigDecimal.ZERO;
-
-                if (pw.getProductIds() != null && pw.getProductIds().contains(it.getProductId())) {
-                    int eligibleQty = it.getQuantity();
-
-                    if (pw.getMinQuantity() != null && eligibleQty < pw.getMinQuantity()) {
-                        eligibleQty = 0;
-                    }
-
-                    if (pw.getMaxQuantity() != null) {
-                        eligibleQty = Math.min(eligibleQty, pw.getMaxQuantity());
-                    }
-
-                    if (eligibleQty > 0 && pw.getDiscountPercent() != null) {
-                        itemDiscount = it.getPrice()
-                                .multiply(new BigDecimal(eligibleQty))
-                                .multiply(pw.getDiscountPercent().divide(new BigDecimal("100")));
-                    }
-                }
-
-                appliedTotal = appliedTotal.add(itemDiscount);
-
-                updated.add(new UpdatedItemDto(
-                        it.getProductId(),
-                        it.getQuantity(),
-                        it.getPrice(),
-                        itemDiscount.setScale(2, BigDecimal.ROUND_HALF_UP)
-                ));
-            }
-
-            BigDecimal diff = totalDiscount
-                    .subtract(appliedTotal)
-                    .setScale(2, BigDecimal.ROUND_HALF_UP);
-
-            if (diff.compareTo(BigDecimal.ZERO) != 0 && !updated.isEmpty()) {
-                UpdatedItemDto first = updated.get(0);
-                first.setTotalDiscount(first.getTotalDiscount().add(diff));
-            }
-
-        } catch (Exception ex) {
-            for (CartItemDto it : cart.getItems()) {
-                updated.add(new UpdatedItemDto(
-                        it.getProductId(),
-                        it.getQuantity(),
-                        it.getPrice(),
-                        BigDecimal.ZERO
-                ));
-            }
+            return compiler.compileRule(c);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
         }
     }
 
-    private void applyBxGyDiscount(
-            CartDto cart,
-            Coupon coupon,
-            List<UpdatedItemDto> updated
-    ) {
+    private CartContext cartContext(CartDto cart) {
         try {
-            com.manugoswami.monk.payload.BxGyPayload bx =
-                    om.readValue(coupon.getPayloadJson(),
-                            com.manugoswami.monk.payload.BxGyPayload.class);
-
-            int totalBuyQty = cart.getItems()
-                    .stream()
-                    .filter(i -> bx.getBuyProductIds() != null
-                            && bx.getBuyProductIds().contains(i.getProductId()))
-                    .mapToInt(CartItemDto::getQuantity)
-                    .sum();
-
-            int required = bx.getBuyRequiredCount() == null ? Integer.MAX_VALUE : bx.getBuyRequiredCount();
-
-            int timesApplicable = totalBuyQty / required;
-            if (timesApplicable < 0) {
-                timesApplicable = 0;
-            }
-
-            if (bx.getRepetitionLimit() != null && bx.getRepetitionLimit() > 0) {
-                timesApplicable = Math.min(timesApplicable, bx.getRepetitionLimit());
-            }
-
-            int totalFreeAllowed = timesApplicable * (bx.getGetQuantity() == null ? 0 : bx.getGetQuantity());
-
-            // Prepare
-            Map<Long, UpdatedItemDto> map = new LinkedHashMap<>();
-            for (CartItemDto it : cart.getItems()) {
-                map.put(it.getProductId(), new UpdatedItemDto(
-                        it.getProductId(),
-                        it.getQuantity(),
-                        it.getPrice(),
-                        BigDecimal.ZERO
-                ));
-            }
-
-            if (totalFreeAllowed > 0 && bx.getGetProductIds() != null) {
-                List<CartItemDto> eligible = cart.getItems()
-                        .stream()
-                        .filter(i -> bx.getGetProductIds().contains(i.getProductId()))
-                        .sorted((a, b) -> b.getPrice().compareTo(a.getPrice()))
-                        .collect(Collectors.toList());
-
-                int remaining = totalFreeAllowed;
-
-                for (CartItemDto it : eligible) {
-                    if (remaining <= 0) {
-                        break;
-                    }
-
-                    int freeQty = Math.min(it.getQuantity(), remaining);
-
-                    BigDecimal disc = it.getPrice().multiply(new BigDecimal(freeQty));
-
-                    UpdatedItemDto u = map.get(it.getProductId());
-                    u.setTotalDiscount(u.getTotalDiscount().add(disc));
-
-                    remaining -= freeQty;
-                }
-            }
-
-            updated.addAll(map.values());
-
-        } catch (Exception ex) {
-            for (CartItemDto it : cart.getItems()) {
-                updated.add(new UpdatedItemDto(
-                        it.getProductId(),
-                        it.getQuantity(),
-                        it.getPrice(),
-                        BigDecimal.ZERO
-                ));
-            }
+            return CartContext.of(cart);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
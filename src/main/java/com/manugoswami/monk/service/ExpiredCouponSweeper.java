@@ -0,0 +1,64 @@
+package com.manugoswami.monk.service;
+
+import com.manugoswami.monk.metrics.CouponMetrics;
+import com.manugoswami.monk.repository.CouponRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Disables coupon rows whose expiry has passed, in batches. The in-memory catalog drops them at
+ * their expiry instant on its own (see CouponIndex); this keeps the table from accumulating rows
+ * that are enabled but can never apply.
+ */
+@Slf4j
+@Component
+public class ExpiredCouponSweeper {
+
+    private final CouponRepository couponRepository;
+    private final CouponMetrics metrics;
+    private final int batchSize;
+
+    public ExpiredCouponSweeper(CouponRepository couponRepository,
+                                CouponMetrics metrics,
+                                @Value("${monk.expiry.sweep-batch-size:500}") int batchSize) {
+        this.couponRepository = couponRepository;
+        this.metrics = metrics;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${monk.expiry.sweep-interval-ms:60000}",
+            initialDelayString = "${monk.expiry.sweep-interval-ms:60000}")
+    public void sweep() {
+        try {
+            int disabled = sweep(Instant.now());
+            if (disabled > 0) {
+                log.info("Disabled {} expired coupons", disabled);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Expiry sweep failed: {}", e.getMessage());
+        }
+    }
+
+    // one short transaction per batch, so a large backlog never holds locks for long
+    int sweep(Instant now) {
+        int total = 0;
+        while (true) {
+            List<Long> ids = couponRepository.findExpiredEnabledIds(now, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                return total;
+            }
+            int n = couponRepository.disableAll(ids, now);
+            metrics.expiredDisabled(n);
+            total += n;
+            if (ids.size() < batchSize) {
+                return total;
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.manugoswami.monk.service;
+
+import com.manugoswami.monk.model.CouponRedemption;
+import com.manugoswami.monk.model.FailedRedemption;
+import com.manugoswami.monk.repository.CouponRedemptionRepository;
+import com.manugoswami.monk.repository.FailedRedemptionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes redemption rows off the request path. Checkouts enqueue into a bounded queue; a
+ * single writer thread drains it in batched inserts of up to {@code batch-size} rows,
+ * waiting at most {@code max-latency-ms} for a batch to fill. Ids come from the entity's
+ * pooled JPA sequence, so the ledger runs on any database Hibernate supports.
+ *
+ * Backpressure: when the queue stays full for {@code enqueue-timeout-ms}, the checkout
+ * thread inserts its own row synchronously. Memory stays bounded and callers slow down to
+ * what the database can absorb. On shutdown the queue is closed and drained before the
+ * writer stops; a checkout whose row lands after that final drain writes it itself.
+ *
+ * A failed batch is retried {@code max-retries} times with doubling backoff from
+ * {@code retry-backoff-ms}, then written row by row. A row the database still rejects is
+ * stored in failed_redemptions with its error. Only a row that cannot be stored there either
+ * is lost; it is logged in full and counted in monk.redemption.failed.
+ *
+ * The limits are enforced by {@link RedemptionLimiter} before a row is recorded, so the
+ * ledger is a record of redemptions, not the source of truth for caps.
+ */
+@Slf4j
+@Component
+public class RedemptionLedger {
+
+    private final CouponRedemptionRepository redemptions;
+    private final FailedRedemptionRepository failedRedemptions;
+    private final int batchSize;
+    private final long maxLatencyMs;
+    private final long enqueueTimeoutMs;
+    private final int maxRetries;
+    private final long retryBackoffMs;
+    private final BlockingQueue<CouponRedemption> queue;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong settled = new AtomicLong();
+
+    private final Counter written;
+    private final Counter retried;
+    private final Counter deadLettered;
+    private final Counter failed;
+    private final Counter callerRuns;
+    private final Timer batchTimer;
+
+    public RedemptionLedger(CouponRedemptionRepository redemptions,
+                            FailedRedemptionRepository failedRedemptions,
+                            MeterRegistry registry,
+                            @Value("${monk.redemption.ledger-batch-size:500}") int batchSize,
+                            @Value("${monk.redemption.queue-capacity:50000}") int capacity,
+                            @Value("${monk.redemption.max-latency-ms:200}") long maxLatencyMs,
+                            @Value("${monk.redemption.enqueue-timeout-ms:20}") long enqueueTimeoutMs,
+                            @Value("${monk.redemption.max-retries:3}") int maxRetries,
+                            @Value("${monk.redemption.retry-backoff-ms:100}") long retryBackoffMs) {
+        this.redemptions = redemptions;
+        this.failedRedemptions = failedRedemptions;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxLatencyMs = Math.max(1, maxLatencyMs);
+        this.enqueueTimeoutMs = Math.max(0, enqueueTimeoutMs);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryBackoffMs = Math.max(0, retryBackoffMs);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+
+        Gauge.builder("monk.redemption.queue.size", queue, BlockingQueue::size).register(registry);
+        written = Counter.builder("monk.redemption.written").register(registry);
+        retried = Counter.builder("monk.redemption.retried")
+                .description("Batch writes retried after a failure")
+                .register(registry);
+        deadLettered = Counter.builder("monk.redemption.dead.lettered")
+                .description("Redemptions stored in failed_redemptions")
+                .register(registry);
+        failed = Counter.builder("monk.redemption.failed")
+                .description("Redemptions that could not be stored anywhere")
+                .register(registry);
+        callerRuns = Counter.builder("monk.redemption.caller.runs")
+                .description("Redemptions written by the request thread because the queue was full")
+                .register(registry);
+        batchTimer = Timer.builder("monk.redemption.batch").publishPercentileHistogram().register(registry);
+
+        writer = new Thread(this::drainLoop, "redemption-ledger");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void record(CouponRedemption redemption) {
+        enqueued.incrementAndGet();
+        try {
+            if (running && queue.offer(redemption, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                // shutdown may have drained the queue for the last time before this offer landed
+                if (!running) {
+                    drainRemaining();
+                }
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        callerRuns.increment();
+        write(List.of(redemption));
+    }
+
+    /**
+     * Blocks until every redemption recorded before the call has been written, dead-lettered
+     * or lost, or the timeout passes. Returns whether it caught up.
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = enqueued.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (settled.get() < target) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        drainRemaining();
+    }
+
+    // anything the writer did not get to; each row is taken by exactly one caller
+    private void drainRemaining() {
+        List<CouponRedemption> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            write(rest);
+        }
+    }
+
+    private void drainLoop() {
+        List<CouponRedemption> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                CouponRedemption first = queue.poll(maxLatencyMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // give a batch that is still filling up the rest of the latency budget
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxLatencyMs);
+                while (batch.size() < batchSize && running) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long left = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || left <= 0) {
+                        break;
+                    }
+                    CouponRedemption next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // shutdown: write what is held, then drain the rest without waiting
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+    }
+
+    private void write(List<CouponRedemption> batch) {
+        long start = System.nanoTime();
+        try {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    redemptions.saveAll(batch);
+                    written.increment(batch.size());
+                    return;
+                } catch (RuntimeException e) {
+                    // ids assigned by the rolled-back attempt would make the next save a merge
+                    batch.forEach(r -> r.setId(null));
+                    if (attempt >= maxRetries) {
+                        log.warn("Writing {} redemptions failed {} times, writing them one by one: {}",
+                                batch.size(), attempt + 1, e.getMessage());
+                        break;
+                    }
+                    retried.increment();
+                    backOff(attempt);
+                }
+            }
+            for (CouponRedemption r : batch) {
+                writeOne(r);
+            }
+        } finally {
+            batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            settled.addAndGet(batch.size());
+        }
+    }
+
+    // isolates rows the database rejects from the rest of their batch
+    private void writeOne(CouponRedemption r) {
+        String error;
+        try {
+            redemptions.save(r);
+            written.increment();
+            return;
+        } catch (RuntimeException e) {
+            r.setId(null);
+            error = String.valueOf(e.getMessage());
+        }
+        try {
+            failedRedemptions.save(new FailedRedemption(r, error.length() > 1000 ? error.substring(0, 1000) : error, Instant.now()));
+            deadLettered.increment();
+        } catch (RuntimeException e) {
+            log.error("Lost redemption of coupon {} by user {}: discount {} at {}",
+                    r.getCouponId(), r.getUserId(), r.getDiscount(), r.getRedeemedAt(), e);
+            failed.increment();
+        }
+    }
+
+    // once interrupted by shutdown, the remaining attempts run without waiting
+    private void backOff(int attempt) {
+        try {
+            Thread.sleep(retryBackoffMs << Math.min(attempt, 20));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.manugoswami.monk.service;
+
+import com.manugoswami.monk.model.CouponUsage;
+import com.manugoswami.monk.model.UserCouponUsage;
+import com.manugoswami.monk.repository.CouponUsageRepository;
+import com.manugoswami.monk.repository.UserCouponUsageRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Enforces coupon redemption caps without locking the coupon row.
+ *
+ * Global caps: each node reserves blocks of redemption tokens from coupon_usage with a
+ * conditional UPDATE that can never push the reserved total past the cap, then hands the
+ * tokens out from an in-memory counter. Only a node with no tokens left touches the
+ * database. Blocks shrink as the cap gets close so that few tokens are stranded on other
+ * nodes. Unused tokens are returned on shutdown; a crash can strand them (under-redeeming)
+ * but can never cause over-redemption.
+ *
+ * The usage row is only ever inserted if absent, never saved over: a save would reset
+ * reservations made by a node that created the row first.
+ *
+ * Per-user caps: a conditional increment of the (coupon, user) row, which only contends
+ * with other checkouts of the same user.
+ */
+@Slf4j
+@Component
+public class RedemptionLimiter {
+
+    private final CouponUsageRepository usageRepository;
+    private final UserCouponUsageRepository userUsageRepository;
+    private final int blockSize;
+    private final Map<Long, AtomicLong> tokens = new ConcurrentHashMap<>();
+
+    public RedemptionLimiter(CouponUsageRepository usageRepository,
+                             UserCouponUsageRepository userUsageRepository,
+                             @Value("${monk.redemption.block-size:64}") int blockSize) {
+        this.usageRepository = usageRepository;
+        this.userUsageRepository = userUsageRepository;
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    /**
+     * Takes one redemption of the coupon for the user. Returns false, taking nothing, when
+     * either cap is exhausted. A limit of 0 means unlimited.
+     */
+    public boolean tryAcquire(Long couponId, String userId, int maxRedemptions, int maxPerUser) {
+        if (maxPerUser > 0 && !tryAcquireForUser(couponId, userId, maxPerUser)) {
+            return false;
+        }
+        if (maxRedemptions > 0 && !tryAcquireToken(couponId, maxRedemptions)) {
+            if (maxPerUser > 0) {
+                userUsageRepository.decrement(couponId, userId);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private boolean tryAcquireToken(Long couponId, int limit) {
+        AtomicLong local = tokens.computeIfAbsent(couponId, id -> new AtomicLong());
+        while (true) {
+            long n = local.get();
+            if (n > 0) {
+                if (local.compareAndSet(n, n - 1)) {
+                    return true;
+                }
+                continue;
+            }
+            synchronized (local) {
+                if (local.get() > 0) {
+                    continue;
+                }
+                long granted = reserveBlock(couponId, limit);
+                if (granted == 0) {
+                    return false;
+                }
+                local.addAndGet(granted - 1);
+                return true;
+            }
+        }
+    }
+
+    // returns the number of tokens reserved, 0 once the cap is reached
+    private long reserveBlock(Long couponId, long limit) {
+        while (true) {
+            CouponUsage usage = usageRepository.findById(couponId).orElse(null);
+            if (usage == null) {
+                createUsage(couponId);
+                continue;
+            }
+            long remaining = limit - usage.getReserved();
+            if (remaining <= 0) {
+                return 0;
+            }
+            // near the cap, take a fraction of what is left so other nodes are not starved
+            long n = Math.min(blockSize, Math.max(1, remaining / 4));
+            if (usageRepository.reserve(couponId, n, limit) == 1) {
+                return n;
+            }
+            // another node reserved in between; re-read and retry with what is left
+        }
+    }
+
+    /**
+     * Creates the coupon's usage row unless it exists. Joins the caller's transaction, so a
+     * coupon created with a cap gets its row in the same commit; coupons capped later get it
+     * lazily on their first redemption.
+     */
+    public void createUsage(Long couponId) {
+        try {
+            usageRepository.insertIfAbsent(couponId);
+        } catch (DataIntegrityViolationException e) {
+            // created concurrently
+        }
+    }
+
+    private boolean tryAcquireForUser(Long couponId, String userId, int limit) {
+        while (true) {
+            if (userUsageRepository.increment(couponId, userId, limit) == 1) {
+                return true;
+            }
+            if (userUsageRepository.existsByCouponIdAndUserId(couponId, userId)) {
+                return false;
+            }
+            try {
+                userUsageRepository.saveAndFlush(new UserCouponUsage(couponId, userId, 0));
+            } catch (DataIntegrityViolationException e) {
+                // created concurrently; the increment above will now find it
+            }
+        }
+    }
+
+    /**
+     * Drops locally held tokens of a coupon, returning them to the shared pool. Called when
+     * the coupon's limits change or it is deleted.
+     */
+    public void release(Long couponId) {
+        AtomicLong local = tokens.remove(couponId);
+        if (local != null) {
+            long n = local.getAndSet(0);
+            if (n > 0) {
+                usageRepository.release(couponId, n);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void releaseAll() {
+        for (Long couponId : tokens.keySet()) {
+            try {
+                release(couponId);
+            } catch (RuntimeException e) {
+                log.warn("Could not return redemption tokens of coupon {}", couponId, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.manugoswami.monk.service;
+
+import com.manugoswami.monk.index.CompiledCoupon;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Picks the discount-maximizing set of coupons for a cart.
+ *
+ * A non-stackable coupon is only ever used on its own. Stackable coupons combine
+ * under two rules: at most one coupon per stack group, and no two coupons may
+ * discount the same cart line. The combined discount is capped at the cart total.
+ *
+ * The search is a depth-first branch-and-bound over options sorted by discount,
+ * bounded by a node budget rather than wall-clock time so that identical carts
+ * always get identical answers. When the budget runs out the best combination
+ * found so far, and at least the best single coupon, is returned and marked as not
+ * proven optimal.
+ */
+@Component
+public class StackingOptimizer {
+
+    private final long maxNodes;
+
+    public StackingOptimizer(@Value("${monk.optimizer.max-nodes:200000}") long maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    public static final class Option {
+        final CompiledCoupon coupon;
+        final long discount;
+        final BitSet lines;
+
+        public Option(CompiledCoupon coupon, long discount, BitSet lines) {
+            this.coupon = coupon;
+            this.discount = discount;
+            this.lines = lines;
+        }
+
+        public CompiledCoupon getCoupon() {
+            return coupon;
+        }
+
+        public long getDiscount() {
+            return discount;
+        }
+    }
+
+    public static final class Result {
+        private final List<Option> chosen;
+        private final long discount;
+        private final boolean optimal;
+
+        Result(List<Option> chosen, long discount, boolean optimal) {
+            this.chosen = chosen;
+            this.discount = discount;
+            this.optimal = optimal;
+        }
+
+        // chosen options ordered by coupon id
+        public List<Option> getChosen() {
+            return chosen;
+        }
+
+        public long getDiscount() {
+            return discount;
+        }
+
+        public boolean isOptimal() {
+            return optimal;
+        }
+    }
+
+    public Result optimize(List<Option> options, long cartTotal) {
+        List<Option> sorted = new ArrayList<>(options);
+        sorted.sort(Comparator.comparingLong((Option o) -> o.discount).reversed()
+                .thenComparing(o -> o.coupon.getId()));
+
+        Option bestSingle = null;
+        List<Option> stackable = new ArrayList<>();
+        Set<String> groupsWithOrderLevelOption = new HashSet<>();
+        for (Option o : sorted) {
+            if (!o.coupon.isStackable()) {
+                if (bestSingle == null) {
+                    bestSingle = o;
+                }
+                continue;
+            }
+            // an option claiming no lines is dominated by a bigger one in its group that claims none either
+            if (o.lines.isEmpty() && !groupsWithOrderLevelOption.add(o.coupon.getStackGroup())) {
+                continue;
+            }
+            stackable.add(o);
+        }
+
+        Search search = new Search(stackable, cartTotal, maxNodes);
+        search.run();
+
+        List<Option> chosen;
+        long discount;
+        long singleDiscount = bestSingle == null ? 0 : Math.min(bestSingle.discount, cartTotal);
+        if (singleDiscount > search.bestValue) {
+            chosen = List.of(bestSingle);
+            discount = singleDiscount;
+        } else {
+            chosen = new ArrayList<>();
+            for (int i : search.bestSet) {
+                chosen.add(stackable.get(i));
+            }
+            chosen.sort(Comparator.comparing(o -> o.coupon.getId()));
+            discount = search.bestValue;
+        }
+        return new Result(chosen, discount, !search.exhausted);
+    }
+
+    private static final class Search {
+        private final List<Option> options;
+        private final long cartTotal;
+        private final long maxNodes;
+        private final int[] groups;
+        private final long[] suffix; // suffix[i] = sum of discounts from i on
+
+        private final boolean[] groupUsed;
+        private final BitSet claimed = new BitSet();
+        private final int[] current;
+        private int depth;
+
+        private long nodes;
+        private boolean exhausted;
+        private long bestValue;
+        private int[] bestSet = new int[0];
+
+        Search(List<Option> options, long cartTotal, long maxNodes) {
+            this.options = options;
+            this.cartTotal = cartTotal;
+            this.maxNodes = maxNodes;
+            int n = options.size();
+            Map<String, Integer> groupIds = new HashMap<>();
+            groups = new int[n];
+            suffix = new long[n + 1];
+            for (int i = 0; i < n; i++) {
+                groups[i] = groupIds.computeIfAbsent(options.get(i).coupon.getStackGroup(), g -> groupIds.size());
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                suffix[i] = suffix[i + 1] + options.get(i).discount;
+            }
+            groupUsed = new boolean[groupIds.size()];
+            current = new int[n];
+            // the largest option on its own, which the search would reach first anyway; an
+            // exhausted budget then never returns less than the best single coupon
+            if (n > 0) {
+                bestValue = Math.min(options.get(0).discount, cartTotal);
+                bestSet = new int[]{0};
+            }
+        }
+
+        void run() {
+            dfs(0, 0);
+        }
+
+        private void dfs(int i, long value) {
+            if (exhausted) {
+                return;
+            }
+            if (++nodes > maxNodes) {
+                exhausted = true;
+                return;
+            }
+            long capped = Math.min(value, cartTotal);
+            if (capped > bestValue) {
+                bestValue = capped;
+                bestSet = Arrays.copyOf(current, depth);
+            }
+            if (i == options.size() || bestValue >= cartTotal
+                    || Math.min(value + suffix[i], cartTotal) <= bestValue) {
+                return;
+            }
+
+            Option o = options.get(i);
+            int group = groups[i];
+            if (!groupUsed[group] && !o.lines.intersects(claimed)) {
+                groupUsed[group] = true;
+                claimed.or(o.lines);
+                current[depth++] = i;
+                dfs(i + 1, value + o.discount);
+                depth--;
+                claimed.andNot(o.lines);
+                groupUsed[group] = false;
+            }
+            dfs(i + 1, value);
+        }
+    }
+}
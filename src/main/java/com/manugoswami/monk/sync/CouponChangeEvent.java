@@ -0,0 +1,31 @@
+package com.manugoswami.monk.sync;
+
+import com.manugoswami.monk.model.Coupon;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A committed coupon write. Published locally as an application event and, when
+ * monk.sync.enabled is set, relayed to the other nodes over Kafka.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CouponChangeEvent {
+
+    public enum Kind { UPSERT, DELETE }
+
+    private Kind kind;
+    private Long couponId;
+    // full coupon state for UPSERT, null for DELETE
+    private Coupon coupon;
+
+    public static CouponChangeEvent upsert(Coupon coupon) {
+        return new CouponChangeEvent(Kind.UPSERT, coupon.getId(), coupon);
+    }
+
+    public static CouponChangeEvent delete(Long couponId) {
+        return new CouponChangeEvent(Kind.DELETE, couponId, null);
+    }
+}
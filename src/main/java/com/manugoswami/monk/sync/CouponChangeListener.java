@@ -0,0 +1,56 @@
+package com.manugoswami.monk.sync;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.manugoswami.monk.index.CouponIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Applies coupon changes from every node (this one included) to the local index. Each node
+ * uses its own consumer group so it sees every event, and starts from the earliest offset:
+ * replaying history is harmless because the index drops changes that are not newer than
+ * what it already holds.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "monk.sync.enabled", havingValue = "true")
+public class CouponChangeListener {
+
+    private final CouponIndex couponIndex;
+    private final CouponSyncStatus status;
+    private final ObjectMapper om;
+
+    public CouponChangeListener(CouponIndex couponIndex, CouponSyncStatus status, ObjectMapper om) {
+        this.couponIndex = couponIndex;
+        this.status = status;
+        this.om = om;
+    }
+
+    @KafkaListener(
+            topics = "${monk.sync.topic}",
+            groupId = "${monk.sync.group-id}",
+            properties = "auto.offset.reset=earliest")
+    public void onChange(ConsumerRecord<String, String> record, Consumer<?, ?> consumer) {
+        try {
+            CouponChangeEvent event = om.readValue(record.value(), CouponChangeEvent.class);
+            boolean applied = event.getKind() == CouponChangeEvent.Kind.DELETE
+                    ? couponIndex.applyDelete(event.getCouponId())
+                    : couponIndex.apply(event.getCoupon());
+            if (!applied) {
+                log.debug("Skipped stale or duplicate change to coupon {} at offset {}", event.getCouponId(), record.offset());
+            }
+        } catch (IOException e) {
+            log.error("Dropping unreadable coupon change at {}-{}@{}", record.topic(), record.partition(), record.offset(), e);
+        }
+
+        TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+        status.applied(record.partition(), record.offset(), consumer.currentLag(tp).orElse(-1));
+    }
+}
@@ -0,0 +1,42 @@
+package com.manugoswami.monk.sync;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Relays local coupon writes to the change topic, keyed by coupon id so every change to
+ * one coupon lands on the same partition and is consumed in order.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "monk.sync.enabled", havingValue = "true")
+public class CouponChangePublisher {
+
+    private final KafkaTemplate<String, String> kafka;
+    private final ObjectMapper om;
+    private final String topic;
+
+    public CouponChangePublisher(KafkaTemplate<String, String> kafka,
+                                 ObjectMapper om,
+                                 @Value("${monk.sync.topic}") String topic) {
+        this.kafka = kafka;
+        this.om = om;
+        this.topic = topic;
+    }
+
+    @EventListener
+    public void onChange(CouponChangeEvent event) throws JsonProcessingException {
+        String key = String.valueOf(event.getCouponId());
+        kafka.send(topic, key, om.writeValueAsString(event)).whenComplete((result, e) -> {
+            if (e != null) {
+                log.error("Failed to publish {} of coupon {}", event.getKind(), key, e);
+            }
+        });
+    }
+}
@@ -0,0 +1,24 @@
+package com.manugoswami.monk.sync;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.config.TopicConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+
+@Configuration
+@ConditionalOnProperty(name = "monk.sync.enabled", havingValue = "true")
+public class CouponSyncConfig {
+
+    // compacted by coupon id, so a node replaying from the start only reads the latest state per coupon
+    @Bean
+    public NewTopic couponChangesTopic(@Value("${monk.sync.topic}") String topic,
+                                       @Value("${monk.sync.partitions:3}") int partitions) {
+        return TopicBuilder.name(topic)
+                .partitions(partitions)
+                .config(TopicConfig.CLEANUP_POLICY_CONFIG, TopicConfig.CLEANUP_POLICY_COMPACT)
+                .build();
+    }
+}
@@ -0,0 +1,63 @@
+package com.manugoswami.monk.sync;
+
+import com.manugoswami.monk.index.CouponIndex;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * How far this node has caught up with the change topic, served at /actuator/couponsync
+ * and as the monk.coupon.sync.lag gauge. Lag is the consumer's own view of the records
+ * left in each partition after the last applied one; -1 until the first fetch reports it.
+ */
+@Component
+@Endpoint(id = "couponsync")
+@ConditionalOnProperty(name = "monk.sync.enabled", havingValue = "true")
+public class CouponSyncStatus {
+
+    private final CouponIndex couponIndex;
+    private final Map<Integer, PartitionState> partitions = new ConcurrentSkipListMap<>();
+
+    public CouponSyncStatus(CouponIndex couponIndex, MeterRegistry registry) {
+        this.couponIndex = couponIndex;
+        Gauge.builder("monk.coupon.sync.lag", this, CouponSyncStatus::totalLag)
+                .description("Coupon change events not yet applied by this node")
+                .register(registry);
+    }
+
+    void applied(int partition, long offset, long lag) {
+        partitions.put(partition, new PartitionState(offset, lag, Instant.now()));
+    }
+
+    public long totalLag() {
+        long total = 0;
+        for (PartitionState p : partitions.values()) {
+            total += Math.max(0, p.lag());
+        }
+        return total;
+    }
+
+    public Map<Integer, PartitionState> partitions() {
+        return partitions;
+    }
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("catalogVersion", couponIndex.version());
+        body.put("lag", totalLag());
+        body.put("partitions", partitions);
+        return body;
+    }
+
+    public record PartitionState(long appliedOffset, long lag, Instant appliedAt) {
+    }
+}
@@ -0,0 +1,56 @@
+package com.manugoswami.monk.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Orders positions by a long key without boxing. Each key is packed with its position into
+ * one long, (key - min) in the high bits and the position in the low bits, and the packed
+ * array goes through the primitive sort; equal keys therefore keep their original order.
+ * Keys spread too widely to leave room for the position fall back to a boxed stable sort.
+ */
+public final class IndexSort {
+
+    private IndexSort() {
+    }
+
+    // positions 0..keys.length-1 ordered by keys[position] ascending, ties in position order
+    public static int[] byKey(long[] keys) {
+        int n = keys.length;
+        if (n == 0) {
+            return new int[0];
+        }
+        long min = keys[0];
+        long max = keys[0];
+        for (long k : keys) {
+            min = Math.min(min, k);
+            max = Math.max(max, k);
+        }
+        int positionBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, n - 1));
+        // max - min as an unsigned difference never overflows
+        if (Long.compareUnsigned(max - min, 1L << (63 - positionBits)) >= 0) {
+            return boxed(keys);
+        }
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            packed[i] = (keys[i] - min) << positionBits | i;
+        }
+        Arrays.sort(packed);
+        int mask = (1 << positionBits) - 1;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) (packed[i] & mask);
+        }
+        return order;
+    }
+
+    private static int[] boxed(long[] keys) {
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // Arrays.sort on objects is stable
+        Arrays.sort(order, Comparator.comparingLong(i -> keys[i]));
+        return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+    }
+}
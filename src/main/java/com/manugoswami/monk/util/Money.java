@@ -0,0 +1,73 @@
+package com.manugoswami.monk.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point helpers for the evaluation path: amounts are long cents, percentages
+ * are int basis points (1% = 100). Rounding is HALF_UP, matching the BigDecimal
+ * arithmetic this replaces. Conversions to and from BigDecimal happen only at the
+ * DTO/payload boundary.
+ */
+public final class Money {
+
+    public static final long BPS_SCALE = 10_000L;
+
+    private Money() {
+    }
+
+    // exact conversion; throws IllegalArgumentException for sub-cent amounts or overflow
+    public static long toCents(BigDecimal amount, String field) {
+        try {
+            return amount.movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(field + " must have at most 2 decimal places");
+        }
+    }
+
+    // exact conversion of a percentage; throws IllegalArgumentException beyond 2 decimal places
+    public static int toBasisPoints(BigDecimal percent, String field) {
+        try {
+            return percent.movePointRight(2).intValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(field + " must have at most 2 decimal places");
+        }
+    }
+
+    public static BigDecimal toBigDecimal(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    // num / den rounded HALF_UP (away from zero on ties); den must be positive
+    public static long divideHalfUp(long num, long den) {
+        long q = num / den;
+        long r = num % den;
+        if (Math.abs(r) * 2 >= den) {
+            q += Long.signum(num);
+        }
+        return q;
+    }
+
+    // cents * bps / 10000, rounded HALF_UP
+    public static long percentOf(long cents, int bps) {
+        return divideHalfUp(Math.multiplyExact(cents, bps), BPS_SCALE);
+    }
+
+    /**
+     * a * b / den in cents, rounded HALF_UP first to 1e-6 cents and then to whole cents.
+     * This is the double rounding of BigDecimal divide(den, 8, HALF_UP).setScale(2, HALF_UP)
+     * on amounts with scale 2; falls back to BigInteger when the product overflows.
+     */
+    public static long proportionalShare(long a, long b, long den) {
+        try {
+            return divideHalfUp(divideHalfUp(Math.multiplyExact(Math.multiplyExact(a, b), 1_000_000L), den), 1_000_000L);
+        } catch (ArithmeticException overflow) {
+            // the share in 1e-6 cents may not fit in a long either
+            return new BigDecimal(BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).multiply(BigInteger.valueOf(1_000_000L)))
+                    .divide(BigDecimal.valueOf(den), 0, RoundingMode.HALF_UP)
+                    .divide(BigDecimal.valueOf(1_000_000L), 0, RoundingMode.HALF_UP)
+                    .longValueExact();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.manugoswami.monk.index;
+
+import com.manugoswami.monk.dto.CartDto;
+import com.manugoswami.monk.dto.CartItemDto;
+import com.manugoswami.monk.processor.CartContext;
+import com.manugoswami.monk.processor.impl.CartWiseProcessor;
+import com.manugoswami.monk.rule.CartWiseRule;
+import com.manugoswami.monk.service.StackingOptimizer;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CartWiseTierIndexTests {
+
+    private static final int[] PERCENT_BPS = {0, 500, 1000, 1001, 1250, 2500, 3333, 5000, 10000};
+
+    @Test
+    void bestMatchesBruteForceOverRandomTiers() {
+        Random random = new Random(4);
+        for (int round = 0; round < 300; round++) {
+            List<CartWiseTierIndex.Entry> entries = new ArrayList<>();
+            int n = random.nextInt(12);
+            for (int ordinal = 0; ordinal < n; ordinal++) {
+                entries.add(new CartWiseTierIndex.Entry(ordinal, randomRule(random)));
+            }
+            CartWiseTierIndex index = CartWiseTierIndex.build(entries);
+
+            for (long total : totals(random, entries)) {
+                long expected = -1;
+                for (CartWiseTierIndex.Entry e : entries) {
+                    if (e.rule.getThresholdCents() <= total) {
+                        expected = Math.max(expected, e.rule.discountFor(total));
+                    }
+                }
+                int best = index.best(total);
+                if (expected < 0) {
+                    assertEquals(-1, best, "nothing applies at " + total);
+                    continue;
+                }
+                CartWiseRule chosen = entries.get(best).rule;
+                assertTrue(chosen.getThresholdCents() <= total, "threshold above " + total);
+                assertEquals(expected, chosen.discountFor(total), "discount at " + total + " in " + entries);
+            }
+        }
+    }
+
+    @Test
+    void bestPerStackingClassGivesTheOptimizerTheSameDiscount() {
+        Random random = new Random(7);
+        CartWiseProcessor processor = new CartWiseProcessor();
+        StackingOptimizer optimizer = new StackingOptimizer(1_000_000);
+        for (int round = 0; round < 200; round++) {
+            List<CompiledCoupon> coupons = new ArrayList<>();
+            List<CartWiseTierIndex.Entry> entries = new ArrayList<>();
+            for (long id = 1; id <= 1 + random.nextInt(10); id++) {
+                CartWiseRule rule = randomRule(random);
+                coupons.add(new CompiledCoupon(id, "C" + id, "CART_WISE", null, random.nextBoolean(),
+                        "G" + random.nextInt(3), 0, 0, processor, rule));
+                entries.add(new CartWiseTierIndex.Entry(entries.size(), rule));
+            }
+            CatalogSnapshot snapshot = CatalogSnapshot.of(1, coupons);
+
+            for (long total : totals(random, entries)) {
+                long all = optimizer.optimize(options(snapshot.cartWiseCandidates(total), total), total).getDiscount();
+                List<CompiledCoupon> best = snapshot.bestCartWisePerStackingClass(total);
+                assertEquals(all, optimizer.optimize(options(best, total), total).getDiscount(),
+                        "total " + total + " over " + coupons);
+
+                Set<String> classes = new HashSet<>();
+                for (CompiledCoupon c : best) {
+                    assertTrue(classes.add(c.isStackable() ? c.getStackGroup() : null), "two coupons of one class");
+                }
+            }
+        }
+    }
+
+    private static List<StackingOptimizer.Option> options(List<CompiledCoupon> coupons, long total) {
+        CartItemDto item = new CartItemDto();
+        item.setProductId(1L);
+        item.setQuantity(1);
+        item.setPrice(BigDecimal.valueOf(total, 2));
+        CartDto dto = new CartDto();
+        dto.setItems(List.of(item));
+        CartContext cart = CartContext.of(dto);
+        List<StackingOptimizer.Option> options = new ArrayList<>();
+        for (CompiledCoupon c : coupons) {
+            long discount = c.getProcessor().calculateDiscount(cart, c.getRule());
+            if (c.getProcessor().isApplicable(cart, c.getRule()) && discount > 0) {
+                options.add(new StackingOptimizer.Option(c, discount, c.getProcessor().discountedLines(cart, c.getRule())));
+            }
+        }
+        return options;
+    }
+
+    private static CartWiseRule randomRule(Random random) {
+        long threshold = random.nextInt(4) == 0 ? 0 : random.nextInt(10_000);
+        int bps = PERCENT_BPS[random.nextInt(PERCENT_BPS.length)];
+        long cap = random.nextBoolean() ? CartWiseRule.UNCAPPED : random.nextInt(2_000);
+        return new CartWiseRule(threshold, bps, cap);
+    }
+
+    // random totals plus every threshold and cap saturation point, and their neighbours
+    private static List<Long> totals(Random random, List<CartWiseTierIndex.Entry> entries) {
+        List<Long> totals = new ArrayList<>(List.of(0L, 1L, 1_000_000L));
+        for (int i = 0; i < 20; i++) {
+            totals.add((long) random.nextInt(25_000));
+        }
+        for (CartWiseTierIndex.Entry e : entries) {
+            List<Long> points = new ArrayList<>(List.of(e.rule.getThresholdCents()));
+            if (e.rule.isCapped() && e.rule.getPercentBps() > 0) {
+                points.add(e.rule.getMaxDiscountCents() * 10_000 / e.rule.getPercentBps());
+            }
+            for (long p : points) {
+                for (long d = -1; d <= 1; d++) {
+                    if (p + d >= 0) {
+                        totals.add(p + d);
+                    }
+                }
+            }
+        }
+        return totals;
+    }
+}
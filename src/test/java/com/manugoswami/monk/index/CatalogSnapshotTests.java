@@ -0,0 +1,147 @@
+package com.manugoswami.monk.index;
+
+import com.manugoswami.monk.dto.CartDto;
+import com.manugoswami.monk.dto.CartItemDto;
+import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.processor.CartContext;
+import com.manugoswami.monk.processor.ProcessorRegistry;
+import com.manugoswami.monk.processor.impl.BxGyProcessor;
+import com.manugoswami.monk.processor.impl.CartWiseProcessor;
+import com.manugoswami.monk.processor.impl.ProductWiseProcessor;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogSnapshotTests {
+
+    private final CouponCompiler compiler = new CouponCompiler(new ProcessorRegistry(List.of(
+            new CartWiseProcessor(), new ProductWiseProcessor(), new BxGyProcessor())));
+    private final Random random = new Random(11);
+
+    @Test
+    void incrementalUpdatesMatchAFullBuild() {
+        Map<Long, CompiledCoupon> expected = new TreeMap<>();
+        for (long id = 1; id <= 300; id += 2) {
+            expected.put(id, randomCoupon(id));
+        }
+        CatalogSnapshot snapshot = CatalogSnapshot.of(1, expected.values());
+
+        for (int step = 0; step < 400; step++) {
+            Map<Long, CompiledCoupon> changes = new HashMap<>();
+            int n = random.nextInt(10) == 0 ? 1 + random.nextInt(40) : 1;
+            for (int i = 0; i < n; i++) {
+                // mostly existing ids and new highest ids; now and then one that has to go in between
+                long maxId = expected.isEmpty() ? 0 : ((TreeMap<Long, CompiledCoupon>) expected).lastKey();
+                long id = random.nextInt(20) == 0 ? 1 + random.nextInt(600) : random.nextInt(4) == 0
+                        ? maxId + 1 + random.nextInt(3) : 1 + random.nextInt((int) Math.max(1, maxId));
+                CompiledCoupon c = random.nextInt(3) == 0 ? null : randomCoupon(id);
+                changes.put(id, c);
+            }
+            changes.forEach((id, c) -> {
+                if (c == null) {
+                    expected.remove(id);
+                } else {
+                    expected.put(id, c);
+                }
+            });
+            snapshot = snapshot.with(snapshot.getVersion() + 1, changes);
+            assertSameLookups(CatalogSnapshot.of(snapshot.getVersion(), expected.values()), snapshot, step);
+        }
+    }
+
+    @Test
+    void removingTheNearestExpiryMovesItToTheNextOne() {
+        Instant soon = Instant.parse("2030-01-01T00:00:00Z");
+        Instant later = Instant.parse("2031-01-01T00:00:00Z");
+        List<CompiledCoupon> coupons = new ArrayList<>();
+        for (long id = 1; id <= 40; id++) {
+            coupons.add(coupon(id, cartWise(), id == 7 ? soon : id == 30 ? later : null));
+        }
+        CatalogSnapshot snapshot = CatalogSnapshot.of(1, coupons);
+        assertEquals(soon, snapshot.getNextExpiry());
+
+        snapshot = snapshot.with(2, Collections.singletonMap(7L, null));
+        assertEquals(later, snapshot.getNextExpiry());
+        assertNull(snapshot.get(7L));
+        assertEquals(39, snapshot.getCoupons().size());
+    }
+
+    private void assertSameLookups(CatalogSnapshot expected, CatalogSnapshot actual, int step) {
+        String at = "step " + step;
+        assertEquals(expected.getCoupons(), actual.getCoupons(), at);
+        assertEquals(expected.getNextExpiry(), actual.getNextExpiry(), at);
+        for (long id = 0; id <= 700; id += 7) {
+            assertEquals(expected.get(id), actual.get(id), at);
+        }
+        for (int i = 0; i < 10; i++) {
+            CartContext cart = randomCart();
+            assertEquals(expected.candidates(cart), actual.candidates(cart), at);
+            assertEquals(expected.nonCartWiseCandidates(cart), actual.nonCartWiseCandidates(cart), at);
+            assertEquals(expected.affectedBy(cart.distinctProductIds()), actual.affectedBy(cart.distinctProductIds()), at);
+            assertEquals(expected.cartWiseCandidates(cart.getTotalCents()), actual.cartWiseCandidates(cart.getTotalCents()), at);
+            assertEquals(byId(expected.bestCartWisePerStackingClass(cart.getTotalCents())),
+                    byId(actual.bestCartWisePerStackingClass(cart.getTotalCents())), at);
+        }
+    }
+
+    private static List<CompiledCoupon> byId(List<CompiledCoupon> coupons) {
+        List<CompiledCoupon> sorted = new ArrayList<>(coupons);
+        sorted.sort(Comparator.comparing(CompiledCoupon::getId));
+        return sorted;
+    }
+
+    private CompiledCoupon randomCoupon(long id) {
+        String[] typeAndPayload = switch (random.nextInt(3)) {
+            case 0 -> cartWise();
+            case 1 -> new String[]{"PRODUCT_WISE", "{\"productIds\":" + products(3) + ",\"discountPercent\":"
+                    + (1 + random.nextInt(30)) + "}"};
+            default -> new String[]{"BXGY", "{\"buyProductIds\":" + products(2) + ",\"buyRequiredCount\":2,"
+                    + "\"getProductIds\":" + products(2) + ",\"getQuantity\":1}"};
+        };
+        Instant expiresAt = random.nextInt(5) == 0 ? Instant.parse("2030-01-01T00:00:00Z").plusSeconds(random.nextInt(1000)) : null;
+        return coupon(id, typeAndPayload, expiresAt);
+    }
+
+    private String[] cartWise() {
+        return new String[]{"CART_WISE", "{\"threshold\":" + random.nextInt(200) + ",\"discountPercent\":"
+                + (1 + random.nextInt(30)) + (random.nextBoolean() ? "" : ",\"maxDiscount\":" + random.nextInt(40)) + "}"};
+    }
+
+    private CompiledCoupon coupon(long id, String[] typeAndPayload, Instant expiresAt) {
+        Coupon c = new Coupon();
+        c.setId(id);
+        c.setCode("SNAP-" + id);
+        c.setType(typeAndPayload[0]);
+        c.setPayloadJson(typeAndPayload[1]);
+        c.setExpiresAt(expiresAt);
+        c.setStackable(random.nextBoolean());
+        c.setStackGroup(random.nextBoolean() ? null : "G" + random.nextInt(3));
+        return compiler.compile(c);
+    }
+
+    private String products(int max) {
+        StringJoiner ids = new StringJoiner(",", "[", "]");
+        for (int i = 1 + random.nextInt(max); i > 0; i--) {
+            ids.add(String.valueOf(1 + random.nextInt(30)));
+        }
+        return ids.toString();
+    }
+
+    private CartContext randomCart() {
+        List<CartItemDto> items = new ArrayList<>();
+        for (int i = random.nextInt(6); i > 0; i--) {
+            CartItemDto item = new CartItemDto();
+            item.setProductId(1L + random.nextInt(40));
+            item.setQuantity(1 + random.nextInt(4));
+            item.setPrice(BigDecimal.valueOf(100 + random.nextInt(5000), 2));
+            items.add(item);
+        }
+        CartDto cart = new CartDto();
+        cart.setItems(items);
+        return CartContext.of(cart);
+    }
+}
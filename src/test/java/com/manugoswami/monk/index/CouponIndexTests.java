@@ -0,0 +1,115 @@
+package com.manugoswami.monk.index;
+
+import com.manugoswami.monk.metrics.CouponMetrics;
+import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.processor.ProcessorRegistry;
+import com.manugoswami.monk.processor.impl.CartWiseProcessor;
+import com.manugoswami.monk.repository.CouponRepository;
+import com.manugoswami.monk.rule.CartWiseRule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CouponIndexTests {
+
+    private final CouponCompiler compiler = new CouponCompiler(new ProcessorRegistry(List.of(new CartWiseProcessor())));
+    private final CouponMetrics metrics = new CouponMetrics(new SimpleMeterRegistry());
+    private final CouponIndex index = new CouponIndex(null, compiler, metrics, "");
+
+    @Test
+    void localWriteDoesNotRollBackANewerRemoteChange() {
+        // v3 arrives from another node before this node's own v2 write is indexed
+        assertTrue(index.apply(coupon(1, 3, 30)));
+        Coupon v2 = coupon(1, 2, 20);
+        index.put(v2, compiler.compileRule(v2));
+        assertEquals(3000, percentBps(1));
+
+        index.putAll(List.of(v2), List.of(compiler.compileRule(v2)));
+        assertEquals(3000, percentBps(1));
+
+        Coupon v4 = coupon(1, 4, 40);
+        index.put(v4, compiler.compileRule(v4));
+        assertEquals(4000, percentBps(1));
+        assertFalse(index.apply(coupon(1, 4, 50)));
+    }
+
+    @Test
+    void deletedCouponIsNotRecreatedByAnOlderWrite() {
+        Coupon v1 = coupon(2, 1, 10);
+        index.put(v1, compiler.compileRule(v1));
+        assertTrue(index.applyDelete(2L));
+
+        Coupon v2 = coupon(2, 2, 20);
+        index.put(v2, compiler.compileRule(v2));
+        assertNull(index.get(2L));
+        assertFalse(index.apply(coupon(2, 5, 20)));
+        assertNull(index.get(2L));
+    }
+
+    @Test
+    void databaseLoadForgetsVersionsOnlyTheSnapshotFileKnew() throws Exception {
+        Path file = Files.createTempFile("monk-catalog", ".snap");
+        try {
+            SnapshotFile.write(file, 7, List.of(compiler.compile(coupon(1, 5, 10)), compiler.compile(coupon(2, 3, 20)),
+                    compiler.compile(coupon(3, 6, 30))), Map.of(1L, 5L, 2L, 3L, 3L, 6L));
+            // a fresh in-memory database: coupons 2 and 3 are gone and id 1 was handed out again
+            List<Coupon> rows = List.of(coupon(1, 0, 15));
+            CouponIndex restarted = new CouponIndex(repository(rows), compiler, metrics, file.toString());
+
+            assertTrue(restarted.restore());
+            assertEquals(1000, percentBps(restarted, 1));
+            // applied after the restore, so it still stands after the load
+            assertTrue(restarted.applyDelete(3L));
+
+            restarted.load();
+            assertEquals(1500, percentBps(restarted, 1));
+            assertNull(restarted.get(2L));
+            assertFalse(restarted.apply(coupon(3, 6, 30)));
+            assertNull(restarted.get(3L));
+
+            // coupons created under the reused ids are indexed
+            Coupon created = coupon(2, 0, 25);
+            restarted.put(created, compiler.compileRule(created));
+            assertEquals(2500, percentBps(restarted, 2));
+            assertTrue(restarted.apply(coupon(1, 1, 40)));
+            assertEquals(4000, percentBps(restarted, 1));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private int percentBps(long id) {
+        return percentBps(index, id);
+    }
+
+    private static int percentBps(CouponIndex index, long id) {
+        return ((CartWiseRule) index.get(id).getRule()).getPercentBps();
+    }
+
+    private static CouponRepository repository(List<Coupon> active) {
+        return (CouponRepository) Proxy.newProxyInstance(CouponRepository.class.getClassLoader(),
+                new Class<?>[]{CouponRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findActive")) {
+                        return active;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static Coupon coupon(long id, long version, int percent) {
+        Coupon c = new Coupon();
+        c.setId(id);
+        c.setCode("INDEX-" + id);
+        c.setType("CART_WISE");
+        c.setVersion(version);
+        c.setPayloadJson("{\"threshold\":10,\"discountPercent\":" + percent + "}");
+        return c;
+    }
+}
@@ -0,0 +1,89 @@
+package com.manugoswami.monk.index;
+
+import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.processor.ProcessorRegistry;
+import com.manugoswami.monk.processor.impl.BxGyProcessor;
+import com.manugoswami.monk.processor.impl.CartWiseProcessor;
+import com.manugoswami.monk.processor.impl.ProductWiseProcessor;
+import com.manugoswami.monk.processor.impl.RuleProcessor;
+import com.manugoswami.monk.rule.dsl.DslRule;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotFileTests {
+
+    private final CouponCompiler compiler = new CouponCompiler(new ProcessorRegistry(List.of(
+            new CartWiseProcessor(), new ProductWiseProcessor(), new BxGyProcessor(), new RuleProcessor())));
+
+    @Test
+    void readsBackWhatWasWritten() throws Exception {
+        List<CompiledCoupon> coupons = List.of(
+                compiled(1, "CART_WISE", "{\"threshold\":100,\"discountPercent\":10,\"maxDiscount\":25}", c -> {
+                    c.setExpiresAt(Instant.parse("2030-01-01T00:00:00.123456789Z"));
+                    c.setMaxRedemptions(5);
+                }),
+                compiled(2, "PRODUCT_WISE", "{\"productIds\":[3,1],\"discountPercent\":12.5,\"minQuantity\":2}", c -> {
+                    c.setStackable(true);
+                    c.setStackGroup("spring");
+                }),
+                compiled(3, "BXGY", "{\"buyProductIds\":[1,2],\"buyRequiredCount\":2,\"getProductIds\":[3],"
+                        + "\"getQuantity\":1,\"repetitionLimit\":3}", c -> c.setMaxRedemptionsPerUser(1)),
+                compiled(4, "RULE", "{\"when\":{\"cartTotal\":{\"min\":50}},\"then\":{\"amountOff\":5}}", c -> c.setCode(null)));
+        Path file = Files.createTempFile("monk-catalog", ".snap");
+        try {
+            SnapshotFile.write(file, 42, coupons, Map.of(1L, 7L, 4L, 2L));
+            SnapshotFile.Contents contents = SnapshotFile.read(file, compiler);
+
+            assertEquals(42, contents.catalogVersion());
+            assertEquals(Map.of(1L, 7L, 2L, 0L, 3L, 0L, 4L, 2L), contents.versions());
+            assertEquals(coupons.subList(0, 3), contents.coupons().subList(0, 3));
+            CompiledCoupon rule = contents.coupons().get(3);
+            assertNull(rule.getCode());
+            assertEquals("RULE", rule.getStackGroup());
+            assertEquals(((DslRule) coupons.get(3).getRule()).payloadJson(), ((DslRule) rule.getRule()).payloadJson());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void rejectsDamagedFiles() throws Exception {
+        Path file = Files.createTempFile("monk-catalog", ".snap");
+        try {
+            SnapshotFile.write(file, 1, List.of(compiled(1, "CART_WISE", "{\"threshold\":1,\"discountPercent\":1}", c -> { })), Map.of());
+            byte[] good = Files.readAllBytes(file);
+
+            byte[] flipped = good.clone();
+            flipped[flipped.length - 1] ^= 1;
+            Files.write(file, flipped);
+            assertThrows(IllegalArgumentException.class, () -> SnapshotFile.read(file, compiler));
+
+            Files.write(file, Arrays.copyOf(good, good.length - 3));
+            assertThrows(IllegalArgumentException.class, () -> SnapshotFile.read(file, compiler));
+
+            Files.write(file, new byte[0]);
+            assertThrows(IllegalArgumentException.class, () -> SnapshotFile.read(file, compiler));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private CompiledCoupon compiled(long id, String type, String payloadJson, Consumer<Coupon> setup) {
+        Coupon c = new Coupon();
+        c.setId(id);
+        c.setCode("SNAP-" + id);
+        c.setType(type);
+        c.setPayloadJson(payloadJson);
+        setup.accept(c);
+        return compiler.compile(c);
+    }
+}
@@ -0,0 +1,69 @@
+package com.manugoswami.monk.processor;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.manugoswami.monk.dto.CartDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CartContextDeserializerTests {
+
+    private static final String CART = "{\"items\":["
+            + "{\"productId\":1,\"quantity\":2,\"price\":10.50,\"tags\":[\"summer\",\"sale\"]},"
+            + "{\"productId\":\"7\",\"quantity\":\"3\",\"price\":\"0.99\",\"name\":{\"tags\":[1,2]}},"
+            + "{\"productId\":1,\"quantity\":1,\"price\":12}"
+            + "],\"note\":[1,{}]}";
+
+    private final ObjectMapper json = mapper(new ObjectMapper());
+
+    @Test
+    void readsTheSameCartAsTheDto() throws Exception {
+        for (ObjectMapper m : List.of(json, mapper(new ObjectMapper(new SmileFactory())), mapper(new ObjectMapper(new CBORFactory())))) {
+            byte[] body = m.writeValueAsBytes(json.readTree(CART));
+
+            assertSameCart(CartContext.of(m.readValue(body, CartDto.class)), m.readValue(body, CartContext.class));
+        }
+    }
+
+    @Test
+    void emptyAndMissingItemsGiveAnEmptyCart() throws Exception {
+        for (String body : List.of("{}", "{\"items\":null}", "{\"items\":[]}", "null")) {
+            assertEquals(0, json.readValue(body, CartContext.class).lineCount(), body);
+        }
+    }
+
+    @Test
+    void invalidCartsAreRejectedAsBadInput() {
+        for (String body : List.of(
+                "{\"items\":[{\"productId\":1,\"quantity\":2}]}",
+                "{\"items\":[{\"productId\":1,\"quantity\":2,\"price\":1.001}]}",
+                "{\"items\":[{\"productId\":1,\"quantity\":2.5,\"price\":1}]}",
+                "{\"items\":[null]}",
+                "{\"items\":\"none\"}",
+                "[]")) {
+            assertThrows(MismatchedInputException.class, () -> json.readValue(body, CartContext.class), body);
+        }
+    }
+
+    private static void assertSameCart(CartContext expected, CartContext actual) {
+        assertEquals(expected.lineCount(), actual.lineCount());
+        for (int line = 0; line < expected.lineCount(); line++) {
+            assertEquals(expected.productId(line), actual.productId(line));
+            assertEquals(expected.quantity(line), actual.quantity(line));
+            assertEquals(expected.priceCents(line), actual.priceCents(line));
+            assertArrayEquals(expected.tags(line), actual.tags(line));
+        }
+        assertEquals(expected.getTotalCents(), actual.getTotalCents());
+    }
+
+    // unknown fields are ignored, as in the application's mapper
+    private static ObjectMapper mapper(ObjectMapper m) {
+        return m.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+}
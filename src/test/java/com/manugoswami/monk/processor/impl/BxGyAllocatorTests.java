@@ -0,0 +1,176 @@
+package com.manugoswami.monk.processor.impl;
+
+import com.manugoswami.monk.dto.CartDto;
+import com.manugoswami.monk.dto.CartItemDto;
+import com.manugoswami.monk.processor.CartContext;
+import com.manugoswami.monk.rule.BxGyRule;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BxGyAllocatorTests {
+
+    private static final int CASES = 5000;
+
+    @Test
+    void matchesBruteForceOnRandomCarts() {
+        Random random = new Random(20);
+        for (int i = 0; i < CASES; i++) {
+            BxGyRule rule = randomRule(random);
+            CartContext cart = randomCart(random);
+
+            int[] free = new int[cart.lineCount()];
+            long discount = BxGyAllocator.allocate(cart, rule, free);
+
+            String label = "case " + i + ": " + rule + " " + describe(cart);
+            assertEquals(bruteForce(cart, rule), discount, label);
+            assertEquals(discount, BxGyAllocator.allocate(cart, rule, null), label);
+            assertAllocationValid(cart, rule, free, discount, label);
+        }
+    }
+
+    @Test
+    void unitIsNeverBothBoughtAndFree() {
+        // buy 1 A get 1 A: a single A only pays for itself
+        BxGyRule rule = new BxGyRule(new long[]{1}, 1, new long[]{1}, 1, 0);
+
+        assertEquals(0, BxGyAllocator.allocate(cart(item(1, 1, "10.00")), rule, null));
+        assertEquals(1000, BxGyAllocator.allocate(cart(item(1, 2, "10.00")), rule, null));
+        assertEquals(1000, BxGyAllocator.allocate(cart(item(1, 3, "10.00")), rule, null));
+    }
+
+    @Test
+    void freesMostExpensiveEligibleUnitsWithinRepetitionLimit() {
+        // buy 2 of {1,2}, get 1 of {3,4}, at most twice
+        BxGyRule rule = new BxGyRule(new long[]{1, 2}, 2, new long[]{3, 4}, 1, 2);
+        CartContext cart = cart(item(1, 6, "5.00"), item(3, 1, "20.00"), item(4, 3, "30.00"));
+
+        int[] free = new int[cart.lineCount()];
+        assertEquals(6000, BxGyAllocator.allocate(cart, rule, free));
+        assertArrayEquals(new int[]{0, 0, 2}, free);
+    }
+
+    // every way of picking free units, for every number of applications
+    private static long bruteForce(CartContext cart, BxGyRule rule) {
+        List<Integer> unitLines = new ArrayList<>();
+        for (int line = 0; line < cart.lineCount(); line++) {
+            for (int q = 0; q < cart.quantity(line); q++) {
+                unitLines.add(line);
+            }
+        }
+        int units = unitLines.size();
+        int buyUnits = 0;
+        for (int line : unitLines) {
+            if (rule.isBuyProduct(cart.productId(line))) buyUnits++;
+        }
+
+        long best = 0;
+        int maxK = buyUnits / rule.getBuyRequiredCount();
+        if (rule.getRepetitionLimit() > 0) maxK = Math.min(maxK, rule.getRepetitionLimit());
+        for (int k = 1; k <= maxK; k++) {
+            for (int mask = 0; mask < (1 << units); mask++) {
+                if (Integer.bitCount(mask) > k * rule.getGetQuantity()) continue;
+                long value = 0;
+                int paidBuyUnits = 0;
+                boolean valid = true;
+                for (int u = 0; u < units; u++) {
+                    long productId = cart.productId(unitLines.get(u));
+                    if ((mask & (1 << u)) != 0) {
+                        if (!rule.isGetProduct(productId)) {
+                            valid = false;
+                            break;
+                        }
+                        value += cart.priceCents(unitLines.get(u));
+                    } else if (rule.isBuyProduct(productId)) {
+                        paidBuyUnits++;
+                    }
+                }
+                if (valid && paidBuyUnits >= k * rule.getBuyRequiredCount()) {
+                    best = Math.max(best, value);
+                }
+            }
+        }
+        return best;
+    }
+
+    private static void assertAllocationValid(CartContext cart, BxGyRule rule, int[] free, long discount, String label) {
+        long value = 0;
+        int freeUnits = 0;
+        int paidBuyUnits = 0;
+        for (int line = 0; line < cart.lineCount(); line++) {
+            assertTrue(free[line] >= 0 && free[line] <= cart.quantity(line), label);
+            if (free[line] > 0) {
+                assertTrue(rule.isGetProduct(cart.productId(line)), label);
+            }
+            if (rule.isBuyProduct(cart.productId(line))) {
+                paidBuyUnits += cart.quantity(line) - free[line];
+            }
+            freeUnits += free[line];
+            value += cart.priceCents(line) * free[line];
+        }
+        assertEquals(discount, value, label);
+        if (freeUnits > 0) {
+            int applications = (freeUnits + rule.getGetQuantity() - 1) / rule.getGetQuantity();
+            assertTrue(paidBuyUnits >= applications * rule.getBuyRequiredCount(), label);
+            if (rule.getRepetitionLimit() > 0) {
+                assertTrue(applications <= rule.getRepetitionLimit(), label);
+            }
+        }
+    }
+
+    private static BxGyRule randomRule(Random random) {
+        return new BxGyRule(
+                randomIds(random),
+                1 + random.nextInt(3),
+                randomIds(random),
+                1 + random.nextInt(3),
+                random.nextInt(4));
+    }
+
+    // a non-empty subset of products 1..4, so buy and get sets often overlap
+    private static long[] randomIds(Random random) {
+        int mask = 1 + random.nextInt(15);
+        return Arrays.stream(new long[]{1, 2, 3, 4}).filter(id -> (mask & (1 << (id - 1))) != 0).toArray();
+    }
+
+    // at most 12 units, so the brute force stays small
+    private static CartContext randomCart(Random random) {
+        List<CartItemDto> items = new ArrayList<>();
+        int units = 0;
+        int lines = 1 + random.nextInt(5);
+        for (int i = 0; i < lines && units < 12; i++) {
+            int qty = 1 + random.nextInt(Math.min(4, 12 - units));
+            units += qty;
+            items.add(item(1 + random.nextInt(4), qty, BigDecimal.valueOf(1 + random.nextInt(50)).toPlainString()));
+        }
+        return cart(items.toArray(new CartItemDto[0]));
+    }
+
+    private static String describe(CartContext cart) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int line = 0; line < cart.lineCount(); line++) {
+            sb.append(cart.productId(line)).append('x').append(cart.quantity(line)).append('@').append(cart.priceCents(line)).append(' ');
+        }
+        return sb.append(']').toString();
+    }
+
+    private static CartItemDto item(long productId, int quantity, String price) {
+        CartItemDto item = new CartItemDto();
+        item.setProductId(productId);
+        item.setQuantity(quantity);
+        item.setPrice(new BigDecimal(price));
+        return item;
+    }
+
+    private static CartContext cart(CartItemDto... items) {
+        CartDto cart = new CartDto();
+        cart.setItems(List.of(items));
+        return CartContext.of(cart);
+    }
+}
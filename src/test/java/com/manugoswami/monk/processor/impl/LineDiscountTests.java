@@ -0,0 +1,106 @@
+package com.manugoswami.monk.processor.impl;
+
+import com.manugoswami.monk.dto.CartDto;
+import com.manugoswami.monk.dto.CartItemDto;
+import com.manugoswami.monk.processor.CartContext;
+import com.manugoswami.monk.processor.CouponProcessor;
+import com.manugoswami.monk.rule.CouponRule;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineDiscountTests {
+
+    private static final int CASES = 2000;
+
+    @Test
+    void lineDiscountsAddUpToTheCalculatedDiscount() {
+        Random random = new Random(24);
+        for (int i = 0; i < CASES; i++) {
+            CartContext cart = randomCart(random);
+            for (CouponProcessor p : List.of(new CartWiseProcessor(), new ProductWiseProcessor(), new BxGyProcessor(), new RuleProcessor())) {
+                CouponRule rule = p.compile(randomPayload(p.type(), random));
+                if (!p.isApplicable(cart, rule)) {
+                    continue;
+                }
+                long[] lines = new long[cart.lineCount()];
+                long total = p.applyAndReturnTotalDiscount(cart, rule, lines);
+
+                String label = "case " + i + " " + p.type();
+                assertEquals(p.calculateDiscount(cart, rule), total, label);
+                long sum = 0;
+                BitSet discounted = p.discountedLines(cart, rule);
+                for (int line = 0; line < lines.length; line++) {
+                    assertTrue(lines[line] >= 0, label);
+                    assertTrue(lines[line] <= cart.priceCents(line) * cart.quantity(line), label);
+                    // order-level discounts claim no lines but may touch all of them
+                    assertTrue(lines[line] == 0 || discounted.get(line) || p.type().equals("CART_WISE"), label);
+                    sum += lines[line];
+                }
+                assertEquals(total, sum, label);
+            }
+        }
+    }
+
+    @Test
+    void productWiseRoundsTheTotalOnce() {
+        // three lines at 1.5 cents of discount each: 4.5 cents rounds to 5, not 3 x 2
+        ProductWiseProcessor p = new ProductWiseProcessor();
+        CouponRule rule = p.compile("{\"productIds\":[1,2,3],\"discountPercent\":50}");
+        CartContext cart = CartContext.of(cart(List.of(item(1, 3), item(2, 3), item(3, 3))));
+
+        long[] lines = new long[cart.lineCount()];
+        assertEquals(5, p.applyAndReturnTotalDiscount(cart, rule, lines));
+        assertEquals(5, lines[0] + lines[1] + lines[2]);
+    }
+
+    private static String randomPayload(String type, Random random) {
+        return switch (type) {
+            case "CART_WISE" -> "{\"threshold\":" + random.nextInt(50) + ",\"discountPercent\":" + random.nextInt(101)
+                    + (random.nextBoolean() ? ",\"maxDiscount\":" + random.nextInt(30) : "") + "}";
+            case "PRODUCT_WISE" -> "{\"productIds\":" + ids(random) + ",\"discountPercent\":" + random.nextInt(10_001) / 100.0
+                    + ",\"minQuantity\":" + random.nextInt(3) + "}";
+            case "BXGY" -> "{\"buyProductIds\":" + ids(random) + ",\"buyRequiredCount\":" + (1 + random.nextInt(3))
+                    + ",\"getProductIds\":" + ids(random) + ",\"getQuantity\":" + (1 + random.nextInt(2))
+                    + ",\"repetitionLimit\":" + random.nextInt(3) + "}";
+            default -> "{\"when\":{\"quantity\":{\"of\":{\"products\":" + ids(random) + "},\"min\":1}},"
+                    + "\"then\":{\"percentOff\":" + random.nextInt(101) + ",\"of\":{\"tags\":[\"t" + random.nextInt(3) + "\"]}}}";
+        };
+    }
+
+    private static String ids(Random random) {
+        return "[" + (1 + random.nextInt(6)) + "," + (1 + random.nextInt(6)) + "]";
+    }
+
+    private static CartContext randomCart(Random random) {
+        List<CartItemDto> items = new ArrayList<>();
+        for (int i = random.nextInt(6); i >= 0; i--) {
+            CartItemDto item = item(1 + random.nextInt(6), 1 + random.nextInt(4));
+            item.setPrice(BigDecimal.valueOf(1 + random.nextInt(5000), 2));
+            item.setTags(List.of("t" + random.nextInt(3)));
+            items.add(item);
+        }
+        return CartContext.of(cart(items));
+    }
+
+    // one cent per unit unless the caller sets a price
+    private static CartItemDto item(long productId, int quantity) {
+        CartItemDto item = new CartItemDto();
+        item.setProductId(productId);
+        item.setQuantity(quantity);
+        item.setPrice(new BigDecimal("0.01"));
+        return item;
+    }
+
+    private static CartDto cart(List<CartItemDto> items) {
+        CartDto cart = new CartDto();
+        cart.setItems(items);
+        return cart;
+    }
+}
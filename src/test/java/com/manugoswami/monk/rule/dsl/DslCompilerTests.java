@@ -0,0 +1,96 @@
+package com.manugoswami.monk.rule.dsl;
+
+import com.manugoswami.monk.dto.CartDto;
+import com.manugoswami.monk.dto.CartItemDto;
+import com.manugoswami.monk.processor.CartContext;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DslCompilerTests {
+
+    // 2 x 10.00 shoes, 1 x 30.00 shirt tagged summer, 3 x 5.00 socks tagged summer
+    private final CartContext cart = CartContext.of(cart(
+            item(1, 2, "10.00", List.of()),
+            item(2, 1, "30.00", List.of("summer", "apparel")),
+            item(3, 3, "5.00", List.of("summer"))));
+
+    @Test
+    void evaluatesConditionsAndDiscounts() {
+        DslRule rule = DslCompiler.compile("{\"when\":{\"all\":["
+                + "{\"cartTotal\":{\"min\":50}},"
+                + "{\"quantity\":{\"of\":{\"tags\":[\"summer\"]},\"min\":4}},"
+                + "{\"not\":{\"subtotal\":{\"of\":{\"products\":[1]},\"min\":25}}}]},"
+                + "\"then\":{\"percentOff\":10,\"of\":{\"tags\":[\"summer\"]},\"maxDiscount\":4}}");
+
+        assertTrue(rule.matches(cart));
+        // 10% of 45.00, capped at 4.00
+        assertEquals(400, rule.discount(cart));
+        assertEquals(List.of(1, 2), rule.targetLines(cart).stream().boxed().toList());
+
+        long[] lines = new long[cart.lineCount()];
+        rule.distribute(cart, 400, lines);
+        assertArrayEquals(new long[]{0, 267, 133}, lines);
+    }
+
+    @Test
+    void amountOffNeverExceedsTheTargetedLines() {
+        DslRule rule = DslCompiler.compile("{\"then\":{\"amountOff\":25,\"of\":{\"products\":[1,9]}}}");
+
+        assertTrue(rule.matches(cart));
+        assertEquals(2000, rule.discount(cart));
+    }
+
+    @Test
+    void derivesTheProductsACouponDependsOn() {
+        DslRule productOnly = DslCompiler.compile("{\"when\":{\"any\":["
+                + "{\"quantity\":{\"of\":{\"products\":[2]},\"min\":1}},"
+                + "{\"subtotal\":{\"of\":{\"products\":[3]},\"min\":5}}]},"
+                + "\"then\":{\"percentOff\":5,\"of\":{\"products\":[2,3,4]}}}");
+        assertArrayEquals(new long[]{2, 3}, productOnly.requiredProductIds());
+        assertArrayEquals(new long[]{2, 3, 4}, productOnly.affectedProductIds());
+
+        DslRule byTotal = DslCompiler.compile("{\"when\":{\"cartTotal\":{\"min\":100}},"
+                + "\"then\":{\"percentOff\":5,\"of\":{\"products\":[2]}}}");
+        assertArrayEquals(new long[]{2}, byTotal.requiredProductIds());
+        assertNull(byTotal.affectedProductIds());
+    }
+
+    @Test
+    void rejectsInvalidPayloads() {
+        for (String payload : List.of(
+                "",
+                "[]",
+                "{\"when\":{\"cartTotal\":{\"min\":1}}}",
+                "{\"then\":{\"percentOff\":101}}",
+                "{\"then\":{\"percentOff\":10,\"amountOff\":5}}",
+                "{\"then\":{\"amountOff\":5,\"maxDiscount\":1}}",
+                "{\"then\":{\"amountOff\":5,\"of\":{}}}",
+                "{\"then\":{\"amountOff\":5,\"off\":{\"products\":[1]}}}",
+                "{\"when\":{\"cartTotal\":{\"min\":10,\"max\":5}},\"then\":{\"amountOff\":5}}",
+                "{\"when\":{\"quantity\":{\"min\":1.5}},\"then\":{\"amountOff\":5}}",
+                "{\"when\":{\"all\":[]},\"then\":{\"amountOff\":5}}",
+                "{\"when\":{\"cartTotal\":{},\"not\":{}},\"then\":{\"amountOff\":5}}",
+                "{\"when\":{\"weekday\":1},\"then\":{\"amountOff\":5}}")) {
+            assertThrows(IllegalArgumentException.class, () -> DslCompiler.compile(payload), payload);
+        }
+    }
+
+    private static CartItemDto item(long productId, int quantity, String price, List<String> tags) {
+        CartItemDto item = new CartItemDto();
+        item.setProductId(productId);
+        item.setQuantity(quantity);
+        item.setPrice(new BigDecimal(price));
+        item.setTags(tags);
+        return item;
+    }
+
+    private static CartDto cart(CartItemDto... items) {
+        CartDto cart = new CartDto();
+        cart.setItems(List.of(items));
+        return cart;
+    }
+}
@@ -0,0 +1,125 @@
+package com.manugoswami.monk.service;
+
+import com.manugoswami.monk.dto.ApplicableCouponDto;
+import com.manugoswami.monk.dto.CartDto;
+import com.manugoswami.monk.dto.CartItemDto;
+import com.manugoswami.monk.index.CompiledCoupon;
+import com.manugoswami.monk.index.CouponCompiler;
+import com.manugoswami.monk.metrics.EvaluationStats;
+import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.processor.CartContext;
+import com.manugoswami.monk.processor.CouponProcessor;
+import com.manugoswami.monk.processor.ProcessorRegistry;
+import com.manugoswami.monk.processor.impl.BxGyProcessor;
+import com.manugoswami.monk.processor.impl.CartWiseProcessor;
+import com.manugoswami.monk.processor.impl.ProductWiseProcessor;
+import com.manugoswami.monk.processor.impl.RuleProcessor;
+import com.manugoswami.monk.rule.CouponRule;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApplicableCouponEvaluatorTests {
+
+    // few distinct payloads, so many coupons tie on the same discount
+    private static final String[][] PAYLOADS = {
+            {"CART_WISE", "{\"threshold\":0,\"discountPercent\":10}"},
+            {"CART_WISE", "{\"threshold\":50,\"discountPercent\":10,\"maxDiscount\":5}"},
+            {"PRODUCT_WISE", "{\"productIds\":[1,2,3],\"discountPercent\":10}"},
+            {"PRODUCT_WISE", "{\"productIds\":[4],\"discountPercent\":25,\"minQuantity\":2}"},
+            {"BXGY", "{\"buyProductIds\":[1,5],\"buyRequiredCount\":2,\"getProductIds\":[2,6],\"getQuantity\":1}"},
+            {"RULE", "{\"when\":{\"cartTotal\":{\"min\":20}},\"then\":{\"amountOff\":5}}"},
+    };
+
+    // fails every evaluation, so error counts are compared too
+    private static final CouponProcessor FAILING = new CouponProcessor() {
+        @Override
+        public String type() {
+            return "FAILING";
+        }
+
+        @Override
+        public CouponRule compile(String payloadJson) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isApplicable(CartContext cart, CouponRule rule) {
+            throw new IllegalStateException("broken rule");
+        }
+
+        @Override
+        public long calculateDiscount(CartContext cart, CouponRule rule) {
+            throw new IllegalStateException("broken rule");
+        }
+
+        @Override
+        public long applyAndReturnTotalDiscount(CartContext cart, CouponRule rule, long[] lineDiscounts,
+                                                EvaluationStats.TypeStats stats) {
+            throw new IllegalStateException("broken rule");
+        }
+    };
+
+    private final CouponCompiler compiler = new CouponCompiler(new ProcessorRegistry(List.of(
+            new CartWiseProcessor(), new ProductWiseProcessor(), new BxGyProcessor(), new RuleProcessor())));
+    private final ApplicableCouponEvaluator sequential = new ApplicableCouponEvaluator(0, 0);
+    // a threshold of one forks every request, down to leaves of a single coupon
+    private final ApplicableCouponEvaluator parallel = new ApplicableCouponEvaluator(1, 4);
+
+    @Test
+    void parallelEvaluationMatchesTheSequentialLoop() {
+        Random random = new Random(9);
+        for (int round = 0; round < 200; round++) {
+            List<CompiledCoupon> candidates = new ArrayList<>();
+            int size = random.nextInt(300);
+            for (long id = 1; id <= size; id++) {
+                if (random.nextInt(20) == 0) {
+                    candidates.add(new CompiledCoupon(id, "EVAL-" + id, "FAILING", null, false, "FAILING", 0, 0, FAILING, null));
+                    continue;
+                }
+                String[] p = PAYLOADS[random.nextInt(PAYLOADS.length)];
+                Coupon c = new Coupon();
+                c.setId(id);
+                c.setCode("EVAL-" + id);
+                c.setType(p[0]);
+                c.setPayloadJson(p[1]);
+                candidates.add(compiler.compile(c));
+            }
+            CartContext cart = randomCart(random);
+
+            EvaluationStats expectedStats = new EvaluationStats();
+            List<ApplicableCouponDto> expected = sequential.evaluate(candidates, cart, expectedStats);
+            EvaluationStats actualStats = new EvaluationStats();
+            List<ApplicableCouponDto> actual = parallel.evaluate(candidates, cart, actualStats);
+
+            assertEquals(expected, actual, "round " + round);
+            assertEquals(expectedStats.byType().keySet(), actualStats.byType().keySet());
+            expectedStats.byType().forEach((type, s) -> {
+                EvaluationStats.TypeStats a = actualStats.byType().get(type);
+                assertEquals(s.evaluated, a.evaluated, type);
+                assertEquals(s.matched, a.matched, type);
+                assertEquals(s.errors, a.errors, type);
+            });
+        }
+        parallel.shutdown();
+    }
+
+    private static CartContext randomCart(Random random) {
+        List<CartItemDto> items = new ArrayList<>();
+        for (int i = random.nextInt(8); i > 0; i--) {
+            CartItemDto item = new CartItemDto();
+            item.setProductId(1L + random.nextInt(8));
+            item.setQuantity(1 + random.nextInt(3));
+            item.setPrice(BigDecimal.valueOf(100 + random.nextInt(9000), 2));
+            items.add(item);
+        }
+        CartDto cart = new CartDto();
+        cart.setItems(items);
+        return CartContext.of(cart);
+    }
+}
@@ -0,0 +1,112 @@
+package com.manugoswami.monk.service;
+
+import com.manugoswami.monk.dto.CartDeltaDto;
+import com.manugoswami.monk.dto.CartDto;
+import com.manugoswami.monk.dto.CartItemDto;
+import com.manugoswami.monk.dto.CartSessionDto;
+import com.manugoswami.monk.model.Coupon;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class CartSessionTests {
+
+    @Autowired
+    private CouponService couponService;
+
+    @Autowired
+    private CartSessionService sessionService;
+
+    @Test
+    void deltasGiveTheSameResultAsAFullEvaluation() {
+        coupon("SESSION-CART-1", "CART_WISE", "{\"threshold\":50,\"discountPercent\":10}");
+        coupon("SESSION-CART-2", "CART_WISE", "{\"threshold\":200,\"discountPercent\":20,\"maxDiscount\":30}");
+        coupon("SESSION-PRODUCT", "PRODUCT_WISE", "{\"productIds\":[901,902],\"discountPercent\":15,\"minQuantity\":2}");
+        coupon("SESSION-BXGY", "BXGY", "{\"buyProductIds\":[901,903],\"buyRequiredCount\":2,"
+                + "\"getProductIds\":[903,904],\"getQuantity\":1,\"repetitionLimit\":2}");
+
+        Random random = new Random(21);
+        CartSessionDto session = sessionService.create(null);
+        for (int step = 0; step < 300; step++) {
+            List<CartDeltaDto> deltas = new ArrayList<>();
+            for (int i = 0; i <= random.nextInt(3); i++) {
+                deltas.add(randomDelta(random));
+            }
+            session = sessionService.apply(session.getSessionId(), deltas);
+            assertEquals(couponService.findApplicableCoupons(cart(session.getItems())), session.getApplicableCoupons());
+        }
+
+        // a catalog change re-evaluates the whole session
+        coupon("SESSION-PRODUCT-2", "PRODUCT_WISE", "{\"productIds\":[904],\"discountPercent\":5}");
+        session = sessionService.get(session.getSessionId());
+        assertEquals(couponService.findApplicableCoupons(cart(session.getItems())), session.getApplicableCoupons());
+    }
+
+    @Test
+    void invalidDeltaLeavesTheSessionUnchanged() {
+        CartSessionDto session = sessionService.create(cart(List.of(item(901, 2, "40.00"))));
+
+        // the second delta adds a product without a price
+        List<CartDeltaDto> deltas = List.of(
+                new CartDeltaDto(CartDeltaDto.Op.SET, 901L, 5, null, null),
+                new CartDeltaDto(CartDeltaDto.Op.ADD, 905L, 1, null, null));
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> sessionService.apply(session.getSessionId(), deltas));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+
+        assertEquals(session.getItems(), sessionService.get(session.getSessionId()).getItems());
+    }
+
+    @Test
+    void deletedSessionIsGone() {
+        CartSessionDto session = sessionService.create(null);
+        sessionService.delete(session.getSessionId());
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> sessionService.get(session.getSessionId()));
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+    }
+
+    private static CartDeltaDto randomDelta(Random random) {
+        CartDeltaDto.Op op = CartDeltaDto.Op.values()[random.nextInt(3)];
+        long productId = 900 + random.nextInt(7);
+        Integer quantity = switch (op) {
+            case ADD -> 1 + random.nextInt(3);
+            case REMOVE -> random.nextBoolean() ? null : 1 + random.nextInt(3);
+            case SET -> random.nextInt(4);
+        };
+        return new CartDeltaDto(op, productId, quantity, BigDecimal.valueOf(500 + random.nextInt(10_000), 2), null);
+    }
+
+    private void coupon(String code, String type, String payloadJson) {
+        Coupon c = new Coupon();
+        c.setCode(code);
+        c.setType(type);
+        c.setPayloadJson(payloadJson);
+        couponService.create(c);
+    }
+
+    private static CartItemDto item(long productId, int quantity, String price) {
+        CartItemDto item = new CartItemDto();
+        item.setProductId(productId);
+        item.setQuantity(quantity);
+        item.setPrice(new BigDecimal(price));
+        return item;
+    }
+
+    private static CartDto cart(List<CartItemDto> items) {
+        CartDto cart = new CartDto();
+        cart.setItems(items);
+        return cart;
+    }
+}
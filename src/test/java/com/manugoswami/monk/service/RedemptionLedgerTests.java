@@ -0,0 +1,125 @@
+package com.manugoswami.monk.service;
+
+import com.manugoswami.monk.model.CouponRedemption;
+import com.manugoswami.monk.model.FailedRedemption;
+import com.manugoswami.monk.repository.CouponRedemptionRepository;
+import com.manugoswami.monk.repository.FailedRedemptionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedemptionLedgerTests {
+
+    // user ids stored by each repository; saveAll is all-or-nothing like its transaction
+    private final Set<String> written = ConcurrentHashMap.newKeySet();
+    private final Set<String> deadLettered = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger outages = new AtomicInteger();
+    private final AtomicBoolean writerDies = new AtomicBoolean();
+    private final CountDownLatch writerDied = new CountDownLatch(1);
+
+    @Test
+    void failedBatchesAreRetriedAndRejectedRowsKept() throws Exception {
+        RedemptionLedger ledger = ledger();
+        // the first two batch writes hit an outage, then a row the database rejects spoils its batch
+        outages.set(2);
+        for (int i = 0; i < 20; i++) {
+            ledger.record(redemption(i == 7 ? "poison" : "u" + i));
+        }
+        assertTrue(ledger.flush(10, TimeUnit.SECONDS));
+        ledger.shutdown();
+
+        assertEquals(19, written.size());
+        assertFalse(written.contains("poison"));
+        assertEquals(Set.of("poison"), deadLettered);
+    }
+
+    @Test
+    void redemptionOfferedAfterTheFinalDrainIsWritten() throws Exception {
+        // a one-slot queue and no writer to empty it, so a checkout stays blocked in the offer
+        RedemptionLedger ledger = ledger(1, 10_000);
+        writerDies.set(true);
+        ledger.record(redemption("lost-with-the-writer"));
+        assertTrue(writerDied.await(10, TimeUnit.SECONDS));
+        ledger.record(redemption("queued"));
+        Thread checkout = new Thread(() -> ledger.record(redemption("offered-late")));
+        checkout.start();
+        while (checkout.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+
+        // the final drain frees the slot, and only then does the offer land
+        ledger.shutdown();
+        checkout.join(10_000);
+
+        assertEquals(Set.of("queued", "offered-late"), written);
+    }
+
+    private RedemptionLedger ledger() {
+        return ledger(100, 0);
+    }
+
+    private RedemptionLedger ledger(int capacity, long enqueueTimeoutMs) {
+        CouponRedemptionRepository redemptions = repository(CouponRedemptionRepository.class, (method, args) -> {
+            List<CouponRedemption> rows = method.equals("saveAll") ? list(args[0]) : List.of((CouponRedemption) args[0]);
+            if (writerDies.getAndSet(false)) {
+                writerDied.countDown();
+                throw new Error("writer died");
+            }
+            if (outages.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                throw new TransientDataAccessResourceException("connection refused");
+            }
+            for (CouponRedemption r : rows) {
+                assertNull(r.getId(), "retried rows must be inserted, not merged");
+                if (r.getUserId().equals("poison")) {
+                    throw new DataIntegrityViolationException("value too long");
+                }
+            }
+            rows.forEach(r -> r.setId(1L));
+            written.addAll(rows.stream().map(CouponRedemption::getUserId).collect(Collectors.toSet()));
+            return args[0];
+        });
+        FailedRedemptionRepository failed = repository(FailedRedemptionRepository.class, (method, args) -> {
+            deadLettered.add(((FailedRedemption) args[0]).getUserId());
+            return args[0];
+        });
+        return new RedemptionLedger(redemptions, failed, new SimpleMeterRegistry(), 50, capacity, 20, enqueueTimeoutMs, 3, 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<CouponRedemption> list(Object rows) {
+        return (List<CouponRedemption>) rows;
+    }
+
+    interface Save {
+        Object apply(String method, Object[] args);
+    }
+
+    // only save and saveAll are called by the ledger
+    private static <T> T repository(Class<T> type, Save save) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getName().equals("save") || method.getName().equals("saveAll")) {
+                return save.apply(method.getName(), args);
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }));
+    }
+
+    private static CouponRedemption redemption(String userId) {
+        return new CouponRedemption(1L, userId, new BigDecimal("5.00"), Instant.now());
+    }
+}
@@ -0,0 +1,183 @@
+package com.manugoswami.monk.service;
+
+import com.manugoswami.monk.dto.CartDto;
+import com.manugoswami.monk.dto.CartItemDto;
+import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.repository.CouponRedemptionRepository;
+import com.manugoswami.monk.repository.CouponUsageRepository;
+import com.manugoswami.monk.repository.UserCouponUsageRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class RedemptionLimitTests {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    private CouponService couponService;
+
+    @Autowired
+    private RedemptionLimiter limiter;
+
+    @Autowired
+    private RedemptionLedger ledger;
+
+    @Autowired
+    private CouponUsageRepository usageRepository;
+
+    @Autowired
+    private UserCouponUsageRepository userUsageRepository;
+
+    @Autowired
+    private CouponRedemptionRepository redemptionRepository;
+
+    @Test
+    void globalCapIsNeverExceeded() throws Exception {
+        Coupon coupon = coupon("CAP-GLOBAL", 100, null);
+
+        AtomicInteger user = new AtomicInteger();
+        int redeemed = race(THREADS, 40, () -> redeem(coupon.getId(), "u" + user.incrementAndGet()));
+
+        assertEquals(100, redeemed);
+        assertTrue(usageRepository.findById(coupon.getId()).orElseThrow().getReserved() <= 100);
+
+        assertTrue(ledger.flush(10, TimeUnit.SECONDS));
+        assertEquals(100, redemptionRepository.countByCouponId(coupon.getId()));
+    }
+
+    @Test
+    void nodesSharingTheDatabaseShareTheCap() throws Exception {
+        Coupon coupon = coupon("CAP-NODES", 50, null);
+        // a second node: its own token counters over the same tables
+        RedemptionLimiter otherNode = new RedemptionLimiter(usageRepository, userUsageRepository, 5);
+
+        AtomicInteger n = new AtomicInteger();
+        int redeemed = race(THREADS, 20, () -> {
+            RedemptionLimiter node = n.incrementAndGet() % 2 == 0 ? limiter : otherNode;
+            return node.tryAcquire(coupon.getId(), null, 50, 0);
+        });
+
+        assertEquals(50, redeemed);
+        assertEquals(50, usageRepository.findById(coupon.getId()).orElseThrow().getReserved());
+    }
+
+    @Test
+    void creatingTheUsageRowNeverResetsReservations() throws Exception {
+        RedemptionLimiter otherNode = new RedemptionLimiter(usageRepository, userUsageRepository, 5);
+        // created uncapped, so there is no usage row until the first redemption
+        Coupon coupon = coupon("CAP-LAZY", null, null);
+        assertTrue(usageRepository.findById(coupon.getId()).isEmpty());
+
+        assertTrue(otherNode.tryAcquire(coupon.getId(), null, 20, 0));
+        long reserved = usageRepository.findById(coupon.getId()).orElseThrow().getReserved();
+        assertTrue(reserved > 0);
+        // this node saw no row just before the other node created it
+        limiter.createUsage(coupon.getId());
+        assertEquals(reserved, usageRepository.findById(coupon.getId()).orElseThrow().getReserved());
+
+        for (int round = 0; round < 20; round++) {
+            Coupon raced = coupon("CAP-LAZY-" + round, null, null);
+            AtomicInteger n = new AtomicInteger();
+            int redeemed = race(THREADS, 5, () -> {
+                RedemptionLimiter node = n.incrementAndGet() % 2 == 0 ? limiter : otherNode;
+                return node.tryAcquire(raced.getId(), null, 20, 0);
+            });
+            assertEquals(20, redeemed, "round " + round);
+            assertEquals(20, usageRepository.findById(raced.getId()).orElseThrow().getReserved());
+        }
+    }
+
+    @Test
+    void perUserCapIsNeverExceeded() throws Exception {
+        Coupon coupon = coupon("CAP-USER", null, 3);
+
+        int redeemed = race(THREADS, 5, () -> redeem(coupon.getId(), "same-user"));
+
+        assertEquals(3, redeemed);
+        // other users are unaffected
+        assertTrue(redeem(coupon.getId(), "another-user"));
+    }
+
+    @Test
+    void failedGlobalCapDoesNotUseUpPerUserAllowance() {
+        Coupon coupon = coupon("CAP-BOTH", 1, 2);
+
+        assertTrue(redeem(coupon.getId(), "first"));
+        assertFalse(redeem(coupon.getId(), "second"));
+        assertEquals(0, userUsageRepository.findAll().stream()
+                .filter(u -> u.getCouponId().equals(coupon.getId()) && u.getUserId().equals("second"))
+                .mapToInt(u -> u.getUsed())
+                .sum());
+    }
+
+    private boolean redeem(Long couponId, String userId) {
+        try {
+            couponService.redeemCoupon(couponId, userId, cart());
+            return true;
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+            return false;
+        }
+    }
+
+    // runs attempts concurrently from all threads at once and returns how many succeeded
+    private static int race(int threads, int attemptsPerThread, Callable<Boolean> attempt) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    int ok = 0;
+                    for (int i = 0; i < attemptsPerThread; i++) {
+                        if (attempt.call()) {
+                            ok++;
+                        }
+                    }
+                    return ok;
+                }));
+            }
+            start.countDown();
+            int total = 0;
+            for (Future<Integer> f : results) {
+                total += f.get(60, TimeUnit.SECONDS);
+            }
+            return total;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Coupon coupon(String code, Integer maxRedemptions, Integer maxPerUser) {
+        Coupon c = new Coupon();
+        c.setCode(code);
+        c.setType("CART_WISE");
+        c.setPayloadJson("{\"threshold\":10,\"discountPercent\":10}");
+        c.setMaxRedemptions(maxRedemptions);
+        c.setMaxRedemptionsPerUser(maxPerUser);
+        return couponService.create(c);
+    }
+
+    private static CartDto cart() {
+        CartItemDto item = new CartItemDto();
+        item.setProductId(1L);
+        item.setQuantity(2);
+        item.setPrice(new BigDecimal("25.00"));
+        CartDto cart = new CartDto();
+        cart.setItems(List.of(item));
+        return cart;
+    }
+}
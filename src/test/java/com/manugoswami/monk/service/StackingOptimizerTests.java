@@ -0,0 +1,138 @@
+package com.manugoswami.monk.service;
+
+import com.manugoswami.monk.index.CompiledCoupon;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StackingOptimizerTests {
+
+    private final Random random = new Random(7);
+
+    @Test
+    void matchesExhaustiveSearchOnSmallInputs() {
+        StackingOptimizer optimizer = new StackingOptimizer(Long.MAX_VALUE);
+        for (int round = 0; round < 3000; round++) {
+            long cartTotal = 1 + random.nextInt(random.nextBoolean() ? 60 : 2000);
+            List<StackingOptimizer.Option> options = randomOptions(1 + random.nextInt(12));
+
+            StackingOptimizer.Result result = optimizer.optimize(options, cartTotal);
+            assertTrue(result.isOptimal());
+            assertValid(result, cartTotal);
+            assertEquals(exhaustive(options, cartTotal), result.getDiscount(), "round " + round + ": " + describe(options));
+        }
+    }
+
+    @Test
+    void exhaustedBudgetStillGivesAValidCombination() {
+        for (int round = 0; round < 500; round++) {
+            long cartTotal = 1 + random.nextInt(2000);
+            List<StackingOptimizer.Option> options = randomOptions(8 + random.nextInt(8));
+            long optimum = exhaustive(options, cartTotal);
+            long bestSingle = 0;
+            for (StackingOptimizer.Option o : options) {
+                bestSingle = Math.max(bestSingle, Math.min(o.getDiscount(), cartTotal));
+            }
+
+            long previous = bestSingle;
+            for (long budget = 1; budget <= 4096; budget *= 2) {
+                StackingOptimizer.Result result = new StackingOptimizer(budget).optimize(options, cartTotal);
+                assertValid(result, cartTotal);
+                assertTrue(result.getDiscount() <= optimum);
+                assertTrue(result.getDiscount() >= bestSingle, "worse than the best single coupon");
+                // the search visits nodes in a fixed order, so a larger budget never finds less
+                assertTrue(result.getDiscount() >= previous, "budget " + budget + " found less than budget " + budget / 2);
+                if (result.isOptimal()) {
+                    assertEquals(optimum, result.getDiscount());
+                }
+                previous = result.getDiscount();
+            }
+        }
+    }
+
+    // a chosen set the rules allow, whose capped discount is the reported one
+    private static void assertValid(StackingOptimizer.Result result, long cartTotal) {
+        List<StackingOptimizer.Option> chosen = result.getChosen();
+        long sum = 0;
+        Set<String> groups = new HashSet<>();
+        BitSet claimed = new BitSet();
+        Long lastId = null;
+        for (StackingOptimizer.Option o : chosen) {
+            if (!o.getCoupon().isStackable()) {
+                assertEquals(1, chosen.size(), "non-stackable coupon combined with others");
+            }
+            assertTrue(groups.add(o.getCoupon().getStackGroup()), "two coupons from one stack group");
+            assertFalse(o.lines.intersects(claimed), "two coupons discount the same line");
+            claimed.or(o.lines);
+            assertTrue(lastId == null || lastId < o.getCoupon().getId(), "not ordered by id");
+            lastId = o.getCoupon().getId();
+            sum += o.getDiscount();
+        }
+        assertEquals(Math.min(sum, cartTotal), result.getDiscount());
+    }
+
+    private static long exhaustive(List<StackingOptimizer.Option> options, long cartTotal) {
+        long best = 0;
+        for (StackingOptimizer.Option o : options) {
+            best = Math.max(best, Math.min(o.getDiscount(), cartTotal));
+        }
+        List<StackingOptimizer.Option> stackable = new ArrayList<>();
+        for (StackingOptimizer.Option o : options) {
+            if (o.getCoupon().isStackable()) {
+                stackable.add(o);
+            }
+        }
+        subsets:
+        for (int mask = 1; mask < 1 << stackable.size(); mask++) {
+            Set<String> groups = new HashSet<>();
+            BitSet claimed = new BitSet();
+            long sum = 0;
+            for (int i = 0; i < stackable.size(); i++) {
+                if ((mask & 1 << i) == 0) {
+                    continue;
+                }
+                StackingOptimizer.Option o = stackable.get(i);
+                if (!groups.add(o.getCoupon().getStackGroup()) || o.lines.intersects(claimed)) {
+                    continue subsets;
+                }
+                claimed.or(o.lines);
+                sum += o.getDiscount();
+            }
+            best = Math.max(best, Math.min(sum, cartTotal));
+        }
+        return best;
+    }
+
+    // few groups, lines and discount values, so conflicts and ties are common
+    private List<StackingOptimizer.Option> randomOptions(int n) {
+        List<StackingOptimizer.Option> options = new ArrayList<>();
+        for (long id = 1; id <= n; id++) {
+            boolean stackable = random.nextInt(4) != 0;
+            String group = "G" + random.nextInt(4);
+            BitSet lines = new BitSet();
+            if (random.nextInt(3) != 0) {
+                for (int line = random.nextInt(3); line >= 0; line--) {
+                    lines.set(random.nextInt(6));
+                }
+            }
+            long discount = 1 + random.nextInt(random.nextBoolean() ? 10 : 500);
+            CompiledCoupon coupon = new CompiledCoupon(id, "OPT-" + id, "PRODUCT_WISE", null, stackable, group,
+                    0, 0, null, null);
+            options.add(new StackingOptimizer.Option(coupon, discount, lines));
+        }
+        // the optimizer must not depend on input order
+        Collections.shuffle(options, random);
+        return options;
+    }
+
+    private static String describe(List<StackingOptimizer.Option> options) {
+        StringJoiner out = new StringJoiner(", ");
+        for (StackingOptimizer.Option o : options) {
+            out.add(o.getCoupon().getId() + (o.getCoupon().isStackable() ? "/" + o.getCoupon().getStackGroup() : "/single")
+                    + " " + o.getDiscount() + " " + o.lines);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,147 @@
+package com.manugoswami.monk.sync;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.manugoswami.monk.index.CouponIndex;
+import com.manugoswami.monk.model.Coupon;
+import com.manugoswami.monk.service.CouponService;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "monk.sync.enabled=true",
+        "monk.sync.partitions=1",
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"
+})
+@EmbeddedKafka(partitions = 1, topics = "monk.coupon-changes")
+class CouponChangeStreamTests {
+
+    private static final String TOPIC = "monk.coupon-changes";
+
+    @Autowired
+    private KafkaTemplate<String, String> kafka;
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private ObjectMapper om;
+
+    @Autowired
+    private CouponIndex couponIndex;
+
+    @Autowired
+    private CouponService couponService;
+
+    @Autowired
+    private CouponSyncStatus status;
+
+    @Test
+    void changeFromAnotherNodeIsApplied() throws Exception {
+        long offset = send(CouponChangeEvent.upsert(coupon(9001L, 1L, true)));
+
+        awaitApplied(offset);
+        assertNotNull(couponIndex.get(9001L));
+        assertTrue(status.status().containsKey("catalogVersion"));
+    }
+
+    @Test
+    void staleChangeIsIgnored() throws Exception {
+        send(CouponChangeEvent.upsert(coupon(9002L, 2L, true)));
+        long offset = send(CouponChangeEvent.upsert(coupon(9002L, 1L, false)));
+
+        awaitApplied(offset);
+        assertNotNull(couponIndex.get(9002L));
+    }
+
+    @Test
+    void deleteFromAnotherNodeRemovesCoupon() throws Exception {
+        send(CouponChangeEvent.upsert(coupon(9003L, 1L, true)));
+        long offset = send(CouponChangeEvent.delete(9003L));
+
+        awaitApplied(offset);
+        assertNull(couponIndex.get(9003L));
+
+        // a replayed upsert must not bring it back
+        offset = send(CouponChangeEvent.upsert(coupon(9003L, 1L, true)));
+        awaitApplied(offset);
+        assertNull(couponIndex.get(9003L));
+    }
+
+    @Test
+    void localWritesArePublished() throws Exception {
+        Coupon c = new Coupon();
+        c.setCode("SYNC-PUBLISH");
+        c.setType("CART_WISE");
+        c.setPayloadJson("{\"threshold\":100,\"discountPercent\":10}");
+        Coupon saved = couponService.create(c);
+
+        Map<String, Object> props = KafkaTestUtils.consumerProps("sync-verify", "false", broker);
+        try (Consumer<String, String> consumer = new DefaultKafkaConsumerFactory<>(
+                props, new StringDeserializer(), new StringDeserializer()).createConsumer()) {
+            broker.consumeFromAnEmbeddedTopic(consumer, TOPIC);
+
+            CouponChangeEvent published = null;
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (published == null && System.currentTimeMillis() < deadline) {
+                for (ConsumerRecord<String, String> r : KafkaTestUtils.getRecords(consumer, Duration.ofSeconds(1))) {
+                    if (String.valueOf(saved.getId()).equals(r.key())) {
+                        published = om.readValue(r.value(), CouponChangeEvent.class);
+                    }
+                }
+            }
+            assertNotNull(published);
+            assertEquals(CouponChangeEvent.Kind.UPSERT, published.getKind());
+            assertEquals(saved.getVersion(), published.getCoupon().getVersion());
+        }
+    }
+
+    private long send(CouponChangeEvent event) throws Exception {
+        return kafka.send(TOPIC, String.valueOf(event.getCouponId()), om.writeValueAsString(event))
+                .get()
+                .getRecordMetadata()
+                .offset();
+    }
+
+    private void awaitApplied(long offset) throws InterruptedException {
+        await(() -> {
+            CouponSyncStatus.PartitionState p = status.partitions().get(0);
+            return p != null && p.appliedOffset() >= offset;
+        });
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for the change to be applied");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private static Coupon coupon(Long id, Long version, boolean enabled) {
+        Coupon c = new Coupon();
+        c.setId(id);
+        c.setVersion(version);
+        c.setCode("SYNC-" + id + "-" + version);
+        c.setType("CART_WISE");
+        c.setPayloadJson("{\"threshold\":50,\"discountPercent\":5}");
+        c.setEnabled(enabled);
+        return c;
+    }
+}
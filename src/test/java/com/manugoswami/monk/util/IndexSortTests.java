@@ -0,0 +1,40 @@
+package com.manugoswami.monk.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexSortTests {
+
+    private final Random random = new Random(5);
+
+    @Test
+    void matchesAStableBoxedSort() {
+        for (int round = 0; round < 2000; round++) {
+            long[] keys = new long[random.nextInt(40)];
+            for (int i = 0; i < keys.length; i++) {
+                switch (random.nextInt(3)) {
+                    // narrow keys, so ties are common
+                    case 0 -> keys[i] = random.nextInt(5);
+                    case 1 -> keys[i] = -random.nextInt(5);
+                    // a range too wide to pack, which takes the fallback
+                    default -> keys[i] = random.nextBoolean() ? Long.MIN_VALUE + random.nextInt(3) : Long.MAX_VALUE - random.nextInt(3);
+                }
+            }
+            assertArrayEquals(reference(keys), IndexSort.byKey(keys), "round " + round + ": " + Arrays.toString(keys));
+        }
+    }
+
+    private static int[] reference(long[] keys) {
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> keys[i]));
+        return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,93 @@
+package com.manugoswami.monk.util;
+
+import com.manugoswami.monk.rule.CartWiseRule;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTests {
+
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+
+    private final Random random = new Random(6);
+
+    @Test
+    void percentAndCapMatchBigDecimal() {
+        for (int i = 0; i < 200_000; i++) {
+            long cents = amount();
+            int bps = random.nextInt(10_001);
+            BigDecimal price = BigDecimal.valueOf(cents, 2);
+            BigDecimal percent = BigDecimal.valueOf(bps, 2);
+            BigDecimal discount = price.multiply(percent).divide(HUNDRED).setScale(2, RoundingMode.HALF_UP);
+            assertEquals(discount, Money.toBigDecimal(Money.percentOf(cents, bps)), price + " at " + percent + "%");
+
+            long cap = random.nextBoolean() ? CartWiseRule.UNCAPPED : random.nextInt(100_000);
+            BigDecimal capped = cap == CartWiseRule.UNCAPPED ? discount : discount.min(BigDecimal.valueOf(cap, 2));
+            assertEquals(capped, Money.toBigDecimal(new CartWiseRule(0, bps, cap).discountFor(cents)),
+                    price + " at " + percent + "% capped at " + cap);
+        }
+    }
+
+    @Test
+    void proportionalShareMatchesBigDecimal() {
+        for (int i = 0; i < 200_000; i++) {
+            long total = 1 + amount();
+            long item = random.nextInt(4) == 0 ? total : (long) (random.nextDouble() * total);
+            long discount = random.nextInt(4) == 0 ? total : (long) (random.nextDouble() * total);
+            assertShare(item, discount, total);
+        }
+        // products past a long take the BigInteger path, up to shares that no longer fit in 1e-6 cents
+        for (int i = 0; i < 20_000; i++) {
+            long total = 1 + (random.nextLong() >>> 1);
+            assertShare(random.nextLong(total), random.nextLong(total), total);
+        }
+    }
+
+    @Test
+    void divideHalfUpRoundsTiesAwayFromZero() {
+        for (int i = 0; i < 200_000; i++) {
+            long num = random.nextInt(3) == 0 ? random.nextLong() : random.nextInt(2_000_001) - 1_000_000;
+            long den = 1 + (random.nextBoolean() ? random.nextInt(20) : random.nextInt(Integer.MAX_VALUE));
+            BigDecimal expected = new BigDecimal(num).divide(new BigDecimal(den), 0, RoundingMode.HALF_UP);
+            assertEquals(expected.longValueExact(), Money.divideHalfUp(num, den), num + " / " + den);
+        }
+        assertEquals(3, Money.divideHalfUp(5, 2));
+        assertEquals(-3, Money.divideHalfUp(-5, 2));
+        assertEquals(-2, Money.divideHalfUp(-7, 4));
+    }
+
+    @Test
+    void conversionsAreExact() {
+        for (int i = 0; i < 10_000; i++) {
+            long cents = amount();
+            assertEquals(cents, Money.toCents(Money.toBigDecimal(cents), "price"));
+            int bps = random.nextInt(10_001);
+            assertEquals(bps, Money.toBasisPoints(BigDecimal.valueOf(bps, 2), "discountPercent"));
+        }
+        assertEquals(1250, Money.toCents(new BigDecimal("12.5"), "price"));
+        assertThrows(IllegalArgumentException.class, () -> Money.toCents(new BigDecimal("0.001"), "price"));
+        assertThrows(IllegalArgumentException.class, () -> Money.toBasisPoints(new BigDecimal("12.345"), "discountPercent"));
+    }
+
+    private void assertShare(long item, long discount, long total) {
+        BigDecimal expected = BigDecimal.valueOf(item, 2).multiply(BigDecimal.valueOf(discount, 2))
+                .divide(BigDecimal.valueOf(total, 2), 8, RoundingMode.HALF_UP)
+                .setScale(2, RoundingMode.HALF_UP);
+        assertEquals(expected, Money.toBigDecimal(Money.proportionalShare(item, discount, total)),
+                item + " * " + discount + " / " + total);
+    }
+
+    // one cent up to ten million in currency units, spread over magnitudes
+    private long amount() {
+        return random.nextInt(1, switch (random.nextInt(4)) {
+            case 0 -> 100;
+            case 1 -> 10_000;
+            case 2 -> 1_000_000;
+            default -> 1_000_000_000;
+        });
+    }
+}